@@ -2,62 +2,118 @@ package com.example.newapplocker.utils;
 
 import android.util.Log;
 
+import com.example.newapplocker.BuildConfig;
+import com.example.newapplocker.core.LogLevels;
+
+import java.util.Locale;
+
 public class LogUtil {
     private static final String TAG = "AppLocker";
-    private static final boolean isDebug = true; // Set to false for release builds
+
+    static {
+        // Release builds keep warnings and errors only; debug builds log everything
+        LogLevels.INSTANCE.setDefaultLevel(BuildConfig.DEBUG ? Log.VERBOSE : Log.WARN);
+    }
+
+    /**
+     * Shared level check for LogUtil and LogUtilManager. Debug and verbose levels are compiled
+     * out of release builds because BuildConfig.DEBUG is a constant there.
+     */
+    public static boolean isLoggable(String tag, int level) {
+        if (!BuildConfig.DEBUG && level < Log.INFO) {
+            return false;
+        }
+        return LogLevels.isLoggable(tag, level);
+    }
+
+    /**
+     * Overrides the minimum level for a single tag, e.g. to silence a noisy component.
+     */
+    public static void setLevel(String tag, int level) {
+        LogLevels.setLevel(tag, level);
+    }
 
     public static void i(String tag, String msg) {
-        if (isDebug)
+        if (isLoggable(tag, Log.INFO))
             Log.i(tag, msg);
     }
 
     public static void e(String tag, String msg) {
-        if (isDebug)
+        if (isLoggable(tag, Log.ERROR))
             Log.e(tag, msg);
     }
 
     public static void w(String tag, String msg) {
-        if (isDebug)
+        if (isLoggable(tag, Log.WARN))
             Log.w(tag, msg);
     }
 
     public static void d(String tag, String msg) {
-        if (isDebug)
+        if (BuildConfig.DEBUG && isLoggable(tag, Log.DEBUG))
             Log.d(tag, msg);
     }
 
     public static void v(String tag, String msg) {
-        if (isDebug)
+        if (BuildConfig.DEBUG && isLoggable(tag, Log.VERBOSE))
             Log.v(tag, msg);
     }
 
+    /**
+     * Format-args overloads: the message is only formatted when the level is enabled, so a
+     * suppressed call costs a level check and nothing else.
+     */
+    public static void d(String tag, String format, Object arg) {
+        if (BuildConfig.DEBUG && isLoggable(tag, Log.DEBUG))
+            Log.d(tag, String.format(Locale.US, format, arg));
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2) {
+        if (BuildConfig.DEBUG && isLoggable(tag, Log.DEBUG))
+            Log.d(tag, String.format(Locale.US, format, arg1, arg2));
+    }
+
+    public static void i(String tag, String format, Object arg) {
+        if (isLoggable(tag, Log.INFO))
+            Log.i(tag, String.format(Locale.US, format, arg));
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(tag, Log.INFO))
+            Log.i(tag, String.format(Locale.US, format, arg1, arg2));
+    }
+
+    public static void w(String tag, String format, Object arg) {
+        if (isLoggable(tag, Log.WARN))
+            Log.w(tag, String.format(Locale.US, format, arg));
+    }
+
+    public static void e(String tag, String format, Object arg) {
+        if (isLoggable(tag, Log.ERROR))
+            Log.e(tag, String.format(Locale.US, format, arg));
+    }
+
     public static void i(String msg) {
-        if (isDebug)
-            Log.i(TAG, msg);
+        i(TAG, msg);
     }
 
     public static void e(String msg) {
-        if (isDebug)
-            Log.e(TAG, msg);
+        e(TAG, msg);
     }
 
     public static void w(String msg) {
-        if (isDebug)
-            Log.w(TAG, msg);
+        w(TAG, msg);
     }
 
     public static void d(String msg) {
-        if (isDebug)
-            Log.d(TAG, msg);
+        d(TAG, msg);
     }
 
     public static void v(String msg) {
-        if (isDebug)
-            Log.v(TAG, msg);
+        v(TAG, msg);
     }
 
     public static void exception(String msg, Throwable throwable) {
-        if (isDebug)
+        if (isLoggable(TAG, Log.ERROR))
             Log.e(TAG, msg, throwable);
     }
-}
\ No newline at end of file
+}
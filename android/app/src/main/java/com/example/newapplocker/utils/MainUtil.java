@@ -7,12 +7,22 @@ import android.preference.PreferenceManager;
 
 import androidx.annotation.Nullable;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
 public class MainUtil {
+    private static final String TAG = "MainUtil";
+    private static final String STORE_NAME = "main_util.kv";
+
     @SuppressLint("StaticFieldLeak")
     private volatile static MainUtil mInstance;
 
-    private Context mContext;
-    private SharedPreferences mPref;
+    private volatile Context mContext;
+    private volatile MappedKeyValueStore mStore;
+    // Guarded by mOpenLock
+    private final Object mOpenLock = new Object();
+    private boolean mOpenFailed;
 
     private MainUtil() {
     }
@@ -28,44 +38,110 @@ public class MainUtil {
         return mInstance;
     }
 
-    public void init(Context context) {
-        if (mContext == null) {
-            mContext = context.getApplicationContext();
+    /**
+     * Records the context and opens the store on a background thread. Opening maps the file
+     * and, on first run, migrates the old SharedPreferences, neither of which belongs on the
+     * UI thread. A call that arrives before the open has finished waits for it.
+     */
+    public synchronized void init(Context context) {
+        if (mContext != null) {
+            return;
         }
-        if (mPref == null) {
-            mPref = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mContext = context.getApplicationContext();
+        new Thread(this::store, "main-util-open").start();
+    }
+
+    // The open store, opening it first if needed; null before init or if it failed to open
+    @Nullable
+    private MappedKeyValueStore store() {
+        MappedKeyValueStore store = mStore;
+        if (store != null || mContext == null) {
+            return store;
+        }
+        synchronized (mOpenLock) {
+            if (mStore == null && !mOpenFailed) {
+                try {
+                    MappedKeyValueStore opened = new MappedKeyValueStore(new File(mContext.getFilesDir(), STORE_NAME));
+                    if (opened.isNewlyCreated()) {
+                        try {
+                            migrateFromSharedPreferences(opened);
+                        } catch (IOException e) {
+                            // The preferences are only cleared after a successful copy
+                            LogUtil.e(TAG, "Failed to migrate preferences: " + e.getMessage());
+                        }
+                    }
+                    mStore = opened;
+                } catch (IOException e) {
+                    mOpenFailed = true;
+                    LogUtil.e(TAG, "Failed to open key-value store: " + e.getMessage());
+                }
+            }
+            return mStore;
         }
     }
 
     public void putString(String key, String value) {
-        if (mPref != null) {
-            SharedPreferences.Editor editor = mPref.edit();
-            editor.putString(key, value);
-            editor.apply();
-        }
+        batch(editor -> editor.putString(key, value));
     }
 
     public void putLong(String key, long value) {
-        if (mPref != null) {
-            SharedPreferences.Editor editor = mPref.edit();
-            editor.putLong(key, value);
-            editor.apply();
-        }
+        batch(editor -> editor.putLong(key, value));
     }
 
     public void putInt(String key, int value) {
-        if (mPref != null) {
-            SharedPreferences.Editor editor = mPref.edit();
-            editor.putInt(key, value);
-            editor.apply();
-        }
+        batch(editor -> editor.putInt(key, value));
     }
 
     public void putBoolean(String key, boolean value) {
-        if (mPref != null) {
-            SharedPreferences.Editor editor = mPref.edit();
-            editor.putBoolean(key, value);
-            editor.apply();
+        batch(editor -> editor.putBoolean(key, value));
+    }
+
+    /**
+     * Applies several writes as one append. Either all of them survive a crash or none do.
+     */
+    public void batch(MappedKeyValueStore.BatchWriter writer) {
+        MappedKeyValueStore.Transaction transaction = beginTransaction();
+        writer.write(transaction);
+        commit(transaction);
+    }
+
+    /**
+     * Like {@link #batch}, but the append is left to the write-behind thread so rapid
+     * successive batches are merged into one write. Values are readable immediately.
+     */
+    public void batchDeferred(MappedKeyValueStore.BatchWriter writer) {
+        MappedKeyValueStore.Transaction transaction = beginTransaction();
+        writer.write(transaction);
+        transaction.commitDeferred();
+    }
+
+    /**
+     * Starts a transaction. Commit it with {@link #commit} or
+     * {@link MappedKeyValueStore.Transaction#commitDeferred()}; until then nothing changes.
+     */
+    public MappedKeyValueStore.Transaction beginTransaction() {
+        // Without a store the transaction is detached and committing it does nothing
+        MappedKeyValueStore store = store();
+        return store != null ? store.edit() : new MappedKeyValueStore.Transaction(null);
+    }
+
+    public void commit(MappedKeyValueStore.Transaction transaction) {
+        try {
+            transaction.commit();
+        } catch (IOException e) {
+            LogUtil.e(TAG, "Failed to commit transaction: " + e.getMessage());
+        }
+    }
+
+    /** Writes any deferred batches now. */
+    public void flush() {
+        MappedKeyValueStore store = store();
+        if (store != null) {
+            try {
+                store.flush();
+            } catch (IOException e) {
+                LogUtil.e(TAG, "Failed to flush deferred writes: " + e.getMessage());
+            }
         }
     }
 
@@ -74,12 +150,14 @@ public class MainUtil {
     }
 
     public boolean getBoolean(String key, boolean def) {
-        return mPref != null ? mPref.getBoolean(key, def) : def;
+        MappedKeyValueStore store = store();
+        return store != null ? store.getBoolean(key, def) : def;
     }
 
     @Nullable
     public String getString(String key, String def) {
-        return mPref != null ? mPref.getString(key, def) : def;
+        MappedKeyValueStore store = store();
+        return store != null ? store.getString(key, def) : def;
     }
 
     @Nullable
@@ -88,26 +166,49 @@ public class MainUtil {
     }
 
     public long getLong(String key, long def) {
-        return mPref != null ? mPref.getLong(key, def) : def;
+        MappedKeyValueStore store = store();
+        return store != null ? store.getLong(key, def) : def;
     }
 
     public int getInt(String key, int def) {
-        return mPref != null ? mPref.getInt(key, def) : def;
+        MappedKeyValueStore store = store();
+        return store != null ? store.getInt(key, def) : def;
     }
 
     public void clear() {
-        if (mPref != null) {
-            SharedPreferences.Editor editor = mPref.edit();
-            editor.clear();
-            editor.apply();
+        MappedKeyValueStore store = store();
+        if (store != null) {
+            store.clear();
         }
     }
 
     public void remove(String key) {
-        if (mPref != null) {
-            SharedPreferences.Editor editor = mPref.edit();
-            editor.remove(key);
-            editor.apply();
+        batch(editor -> editor.remove(key));
+    }
+
+    // Earlier versions kept these values in the default SharedPreferences
+    private void migrateFromSharedPreferences(MappedKeyValueStore store) throws IOException {
+        SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(mContext);
+        Map<String, ?> all = pref.getAll();
+        if (all.isEmpty()) {
+            return;
         }
+
+        store.batch(editor -> {
+            for (Map.Entry<String, ?> entry : all.entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof String) {
+                    editor.putString(entry.getKey(), (String) value);
+                } else if (value instanceof Integer) {
+                    editor.putInt(entry.getKey(), (Integer) value);
+                } else if (value instanceof Long) {
+                    editor.putLong(entry.getKey(), (Long) value);
+                } else if (value instanceof Boolean) {
+                    editor.putBoolean(entry.getKey(), (Boolean) value);
+                }
+            }
+        });
+        pref.edit().clear().apply();
+        LogUtil.i(TAG, "Migrated %d preferences to the key-value store", all.size());
     }
-}
\ No newline at end of file
+}
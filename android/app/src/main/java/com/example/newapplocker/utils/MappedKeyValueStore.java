@@ -0,0 +1,575 @@
+package com.example.newapplocker.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only key-value store on a memory-mapped file.
+ * <p>
+ * Every write appends a CRC-checked record to the mapped region and then bumps the committed
+ * length in the file header, so a write is a memory copy with no fsync; the kernel flushes the
+ * dirty pages. Reads are served from an in-memory index built when the file is opened. A torn
+ * or corrupt tail is dropped on open. When superseded records make up most of the file it is
+ * compacted into a fresh file that replaces the old one.
+ * <p>
+ * Writes are grouped with {@link #edit()}: a {@link Transaction} collects mutations, keeps only
+ * the last one per key and commits them in a single append. {@link Transaction#commitDeferred()}
+ * makes the values visible to readers at once but leaves the append to a background thread,
+ * which merges every deferred commit made within {@link #setWriteBehindDelayMs} into one.
+ * <p>
+ * Record layout: {@code crc32:int keyLen:short type:byte valLen:int key value}, where the CRC
+ * covers everything after itself. Plain Java with no Android dependencies.
+ */
+public final class MappedKeyValueStore implements Closeable {
+    private static final int MAGIC = 0x51564b56; // "QVKV"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int OFFSET_DATA_END = 8;
+    private static final int RECORD_OVERHEAD = 11;
+    private static final int INITIAL_SIZE = 16 * 1024;
+    private static final int COMPACT_MIN_BYTES = 64 * 1024;
+    private static final long DEFAULT_WRITE_BEHIND_DELAY_MS = 200;
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_REMOVE = 5;
+
+    public interface Editor {
+        Editor putString(String key, String value);
+
+        Editor putInt(String key, int value);
+
+        Editor putLong(String key, long value);
+
+        Editor putBoolean(String key, boolean value);
+
+        Editor remove(String key);
+    }
+
+    public interface BatchWriter {
+        void write(Editor editor);
+    }
+
+    private static final class Mutation {
+        final String key;
+        final byte type;
+        final Object value;
+
+        Mutation(String key, byte type, Object value) {
+            this.key = key;
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Collects mutations for one atomic commit. Later mutations of a key replace earlier ones.
+     * A transaction that is never committed has no effect.
+     */
+    public static final class Transaction implements Editor {
+        private final MappedKeyValueStore mStore;
+        private final LinkedHashMap<String, Mutation> mMutations = new LinkedHashMap<>();
+
+        Transaction(MappedKeyValueStore store) {
+            mStore = store;
+        }
+
+        @Override
+        public Transaction putString(String key, String value) {
+            // Like SharedPreferences, a null value removes the key
+            return add(value == null ? new Mutation(key, TYPE_REMOVE, null) : new Mutation(key, TYPE_STRING, value));
+        }
+
+        @Override
+        public Transaction putInt(String key, int value) {
+            return add(new Mutation(key, TYPE_INT, value));
+        }
+
+        @Override
+        public Transaction putLong(String key, long value) {
+            return add(new Mutation(key, TYPE_LONG, value));
+        }
+
+        @Override
+        public Transaction putBoolean(String key, boolean value) {
+            return add(new Mutation(key, TYPE_BOOLEAN, value));
+        }
+
+        @Override
+        public Transaction remove(String key) {
+            return add(new Mutation(key, TYPE_REMOVE, null));
+        }
+
+        /** Appends every mutation now, as one record group with a single header update. */
+        public void commit() throws IOException {
+            if (mStore != null && !mMutations.isEmpty()) {
+                mStore.commit(new ArrayList<>(mMutations.values()));
+            }
+            mMutations.clear();
+        }
+
+        /**
+         * Publishes the values to readers now and appends them later on the write-behind
+         * thread, merged with any other deferred commits made in the meantime.
+         */
+        public void commitDeferred() {
+            if (mStore != null && !mMutations.isEmpty()) {
+                mStore.commitDeferred(new ArrayList<>(mMutations.values()));
+            }
+            mMutations.clear();
+        }
+
+        private Transaction add(Mutation mutation) {
+            mMutations.remove(mutation.key);
+            mMutations.put(mutation.key, mutation);
+            return this;
+        }
+    }
+
+    private final File mFile;
+    private final ConcurrentHashMap<String, Object> mValues = new ConcurrentHashMap<>();
+    // Size of the record currently backing each key; guarded by this
+    private final HashMap<String, Integer> mRecordSizes = new HashMap<>();
+    private final CRC32 mCrc = new CRC32();
+
+    private RandomAccessFile mRaf;
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private int mDataEnd;
+    private int mLiveBytes;
+    private boolean mCreated;
+
+    // Deferred mutations waiting for the write-behind flush, last one per key; guarded by this
+    private final LinkedHashMap<String, Mutation> mPending = new LinkedHashMap<>();
+    private ScheduledExecutorService mWriteBehind;
+    private long mWriteBehindDelayMs = DEFAULT_WRITE_BEHIND_DELAY_MS;
+    private boolean mFlushScheduled;
+
+    // Write accounting, so callers can measure write amplification
+    private long mBytesWritten;
+    private long mCommitCount;
+
+    public MappedKeyValueStore(File file) throws IOException {
+        mFile = file;
+        open();
+    }
+
+    /** True if the file did not exist (or was unreadable) and was created empty. */
+    public boolean isNewlyCreated() {
+        return mCreated;
+    }
+
+    public boolean contains(String key) {
+        return mValues.containsKey(key);
+    }
+
+    public String getString(String key, String def) {
+        Object value = mValues.get(key);
+        return value instanceof String ? (String) value : def;
+    }
+
+    public int getInt(String key, int def) {
+        Object value = mValues.get(key);
+        return value instanceof Integer ? (Integer) value : def;
+    }
+
+    public long getLong(String key, long def) {
+        Object value = mValues.get(key);
+        return value instanceof Long ? (Long) value : def;
+    }
+
+    public boolean getBoolean(String key, boolean def) {
+        Object value = mValues.get(key);
+        return value instanceof Boolean ? (Boolean) value : def;
+    }
+
+    public void putString(String key, String value) throws IOException {
+        batch(editor -> editor.putString(key, value));
+    }
+
+    public void putInt(String key, int value) throws IOException {
+        batch(editor -> editor.putInt(key, value));
+    }
+
+    public void putLong(String key, long value) throws IOException {
+        batch(editor -> editor.putLong(key, value));
+    }
+
+    public void putBoolean(String key, boolean value) throws IOException {
+        batch(editor -> editor.putBoolean(key, value));
+    }
+
+    public void remove(String key) throws IOException {
+        batch(editor -> editor.remove(key));
+    }
+
+    /** Starts a transaction; nothing is written until it is committed. */
+    public Transaction edit() {
+        return new Transaction(this);
+    }
+
+    /**
+     * Applies every mutation made by {@code writer} as one append with a single header
+     * update: after a crash either all of them are visible or none are.
+     */
+    public void batch(BatchWriter writer) throws IOException {
+        Transaction transaction = edit();
+        writer.write(transaction);
+        transaction.commit();
+    }
+
+    /** How long deferred commits are held so that later ones can be merged into them. */
+    public synchronized void setWriteBehindDelayMs(long delayMs) {
+        mWriteBehindDelayMs = Math.max(0, delayMs);
+    }
+
+    /** Appends any deferred mutations now. */
+    public synchronized void flush() throws IOException {
+        if (mPending.isEmpty()) {
+            return;
+        }
+        appendLocked(new ArrayList<>(mPending.values()));
+        mPending.clear();
+        compactIfNeededLocked();
+    }
+
+    /** Total bytes appended to the file, including compaction rewrites. */
+    public synchronized long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /** Number of header commits, i.e. separate writes that reached the file. */
+    public synchronized long getCommitCount() {
+        return mCommitCount;
+    }
+
+    /** Drops every key. */
+    public synchronized void clear() {
+        mPending.clear();
+        mValues.clear();
+        mRecordSizes.clear();
+        mLiveBytes = 0;
+        mDataEnd = HEADER_SIZE;
+        mBuffer.putInt(OFFSET_DATA_END, mDataEnd);
+    }
+
+    /** Forces the mapped pages to disk. Not needed for durability across process death. */
+    public synchronized void sync() {
+        mBuffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        if (mWriteBehind != null) {
+            mWriteBehind.shutdown();
+        }
+        mBuffer.force();
+        mChannel.close();
+        mRaf.close();
+    }
+
+    private synchronized void commit(List<Mutation> mutations) throws IOException {
+        // These supersede any deferred value for the same keys
+        for (Mutation mutation : mutations) {
+            mPending.remove(mutation.key);
+        }
+        appendLocked(mutations);
+        compactIfNeededLocked();
+    }
+
+    private synchronized void commitDeferred(List<Mutation> mutations) {
+        for (Mutation mutation : mutations) {
+            mPending.remove(mutation.key);
+            mPending.put(mutation.key, mutation);
+            // Readers see the value immediately; the record follows on flush
+            if (mutation.type == TYPE_REMOVE) {
+                mValues.remove(mutation.key);
+            } else {
+                mValues.put(mutation.key, mutation.value);
+            }
+        }
+
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            if (mWriteBehind == null) {
+                mWriteBehind = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "kv-write-behind");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            mWriteBehind.schedule(this::flushScheduled, mWriteBehindDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void flushScheduled() {
+        mFlushScheduled = false;
+        try {
+            flush();
+        } catch (IOException e) {
+            // Values stay readable from memory and pending; the next flush retries them
+        }
+    }
+
+    private void appendLocked(List<Mutation> mutations) throws IOException {
+        byte[][] records = new byte[mutations.size()][];
+        int total = 0;
+        for (int i = 0; i < records.length; i++) {
+            records[i] = encode(mutations.get(i));
+            total += records[i].length;
+        }
+
+        ensureCapacityLocked(mDataEnd + total);
+        mBuffer.position(mDataEnd);
+        for (byte[] record : records) {
+            mBuffer.put(record);
+        }
+        mDataEnd += total;
+        // Publishing the new end commits the whole batch
+        mBuffer.putInt(OFFSET_DATA_END, mDataEnd);
+        mBytesWritten += total + 4;
+        mCommitCount++;
+
+        for (int i = 0; i < records.length; i++) {
+            Mutation mutation = mutations.get(i);
+            index(mutation.key, mutation.type == TYPE_REMOVE ? null : mutation.value, records[i].length);
+        }
+    }
+
+    private void index(String key, Object value, int recordSize) {
+        Integer previous = value == null ? mRecordSizes.remove(key) : mRecordSizes.put(key, recordSize);
+        if (previous != null) {
+            mLiveBytes -= previous;
+        }
+        if (value == null) {
+            mValues.remove(key);
+        } else {
+            mValues.put(key, value);
+            mLiveBytes += recordSize;
+        }
+    }
+
+    private byte[] encode(Mutation mutation) {
+        byte[] key = mutation.key.getBytes(StandardCharsets.UTF_8);
+        if (key.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Key too long: " + mutation.key);
+        }
+
+        byte[] value;
+        switch (mutation.type) {
+            case TYPE_STRING:
+                value = ((String) mutation.value).getBytes(StandardCharsets.UTF_8);
+                break;
+            case TYPE_INT:
+                value = ByteBuffer.allocate(4).putInt((Integer) mutation.value).array();
+                break;
+            case TYPE_LONG:
+                value = ByteBuffer.allocate(8).putLong((Long) mutation.value).array();
+                break;
+            case TYPE_BOOLEAN:
+                value = new byte[]{(byte) ((Boolean) mutation.value ? 1 : 0)};
+                break;
+            default:
+                value = new byte[0];
+                break;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + key.length + value.length);
+        record.putInt(0);
+        record.putShort((short) key.length);
+        record.put(mutation.type);
+        record.putInt(value.length);
+        record.put(key);
+        record.put(value);
+
+        mCrc.reset();
+        mCrc.update(record.array(), 4, record.capacity() - 4);
+        record.putInt(0, (int) mCrc.getValue());
+        return record.array();
+    }
+
+    private void open() throws IOException {
+        File parent = mFile.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        mRaf = new RandomAccessFile(mFile, "rw");
+        mChannel = mRaf.getChannel();
+
+        long length = mChannel.size();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Store too large: " + length);
+        }
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(length, INITIAL_SIZE));
+
+        if (length < HEADER_SIZE || mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != VERSION) {
+            // New or unrecognised file: start empty
+            mBuffer.putInt(0, MAGIC);
+            mBuffer.putInt(4, VERSION);
+            mBuffer.putInt(OFFSET_DATA_END, HEADER_SIZE);
+            mDataEnd = HEADER_SIZE;
+            mCreated = true;
+            return;
+        }
+
+        int committedEnd = mBuffer.getInt(OFFSET_DATA_END);
+        if (committedEnd < HEADER_SIZE || committedEnd > mBuffer.capacity()) {
+            committedEnd = HEADER_SIZE;
+        }
+
+        int position = HEADER_SIZE;
+        while (position + RECORD_OVERHEAD <= committedEnd) {
+            int size = readRecord(position, committedEnd);
+            if (size < 0) {
+                break;
+            }
+            position += size;
+        }
+
+        // Drop anything after the last valid record
+        mDataEnd = position;
+        if (position != committedEnd) {
+            mBuffer.putInt(OFFSET_DATA_END, mDataEnd);
+        }
+    }
+
+    // Indexes the record at position and returns its size, or -1 if it is torn or corrupt
+    private int readRecord(int position, int limit) {
+        int crc = mBuffer.getInt(position);
+        int keyLength = mBuffer.getShort(position + 4);
+        byte type = mBuffer.get(position + 6);
+        int valueLength = mBuffer.getInt(position + 7);
+        if (keyLength < 0 || valueLength < 0 || position + RECORD_OVERHEAD + keyLength + valueLength > limit) {
+            return -1;
+        }
+
+        int size = RECORD_OVERHEAD + keyLength + valueLength;
+        byte[] body = new byte[size - 4];
+        mBuffer.position(position + 4);
+        mBuffer.get(body);
+        mCrc.reset();
+        mCrc.update(body, 0, body.length);
+        if ((int) mCrc.getValue() != crc) {
+            return -1;
+        }
+
+        String key = new String(body, RECORD_OVERHEAD - 4, keyLength, StandardCharsets.UTF_8);
+        ByteBuffer value = ByteBuffer.wrap(body, RECORD_OVERHEAD - 4 + keyLength, valueLength);
+        switch (type) {
+            case TYPE_STRING:
+                index(key, new String(body, RECORD_OVERHEAD - 4 + keyLength, valueLength, StandardCharsets.UTF_8), size);
+                break;
+            case TYPE_INT:
+                index(key, value.getInt(), size);
+                break;
+            case TYPE_LONG:
+                index(key, value.getLong(), size);
+                break;
+            case TYPE_BOOLEAN:
+                index(key, value.get() != 0, size);
+                break;
+            case TYPE_REMOVE:
+                index(key, null, size);
+                break;
+            default:
+                return -1;
+        }
+        return size;
+    }
+
+    private void ensureCapacityLocked(int required) throws IOException {
+        if (required <= mBuffer.capacity()) {
+            return;
+        }
+        long size = mBuffer.capacity();
+        while (size < required) {
+            size *= 2;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Store too large: " + size);
+        }
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    // Call once the appended batch is accounted for: if compaction fails, the batch is still
+    // committed to the old file and must not be appended again
+    private void compactIfNeededLocked() throws IOException {
+        int used = mDataEnd - HEADER_SIZE;
+        if (used >= COMPACT_MIN_BYTES && mLiveBytes * 2 < used) {
+            compactLocked();
+        }
+    }
+
+    // Writes the live records to a new file, syncs it and swaps it in
+    private void compactLocked() throws IOException {
+        // mValues also holds deferred values that have no record yet, so mLiveBytes cannot
+        // size the file; encode first and size it from the records themselves
+        List<byte[]> records = new ArrayList<>(mValues.size());
+        int total = HEADER_SIZE;
+        for (Map.Entry<String, Object> entry : mValues.entrySet()) {
+            Object value = entry.getValue();
+            byte type = value instanceof String ? TYPE_STRING
+                    : value instanceof Integer ? TYPE_INT
+                    : value instanceof Long ? TYPE_LONG
+                    : TYPE_BOOLEAN;
+            byte[] record = encode(new Mutation(entry.getKey(), type, value));
+            records.add(record);
+            total += record.length;
+        }
+
+        ByteBuffer compacted = ByteBuffer.allocate(total);
+        compacted.putInt(MAGIC);
+        compacted.putInt(VERSION);
+        compacted.putInt(0);
+        compacted.putInt(0);
+        for (byte[] record : records) {
+            compacted.put(record);
+        }
+        compacted.putInt(OFFSET_DATA_END, compacted.position());
+
+        File temp = new File(mFile.getPath() + ".tmp");
+        try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+            out.setLength(0);
+            out.write(compacted.array(), 0, compacted.position());
+            out.getFD().sync();
+        }
+        mBytesWritten += compacted.position();
+
+        // Swap while the old file is still open: if the rename fails, the store carries on
+        // with it and nothing in memory or pending has changed
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+            throw new IOException("Failed to replace " + mFile + " with its compacted copy");
+        }
+        mChannel.close();
+        mRaf.close();
+
+        // The compacted file already holds every deferred value, and deferred removals are
+        // absent from it, so nothing is left for the write-behind flush
+        mPending.clear();
+
+        // Re-indexing puts the same values back, so lock-free readers never see a gap
+        mRecordSizes.clear();
+        mLiveBytes = 0;
+        open();
+    }
+}
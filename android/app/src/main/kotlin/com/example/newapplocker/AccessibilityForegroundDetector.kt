@@ -0,0 +1,74 @@
+package com.example.newapplocker
+
+import android.accessibilityservice.AccessibilityService
+import android.os.Build
+import android.view.accessibility.AccessibilityEvent
+import android.view.accessibility.AccessibilityWindowInfo
+import com.example.newapplocker.core.ForegroundDetector
+import com.example.newapplocker.utils.LogUtilManager
+
+/**
+ * [ForegroundDetector] fed by the accessibility service's window events.
+ *
+ * There is nothing to poll: the system pushes events to the service, which hands them to
+ * [onAccessibilityEvent]. A window-state change reports the focused app. With multi-window
+ * detection the service also receives window-list changes, and every visible application
+ * window that is not focused is reported as inactive. While stopped, events are dropped.
+ * Main thread only.
+ */
+class AccessibilityForegroundDetector(private val service: AccessibilityService) : ForegroundDetector {
+
+    companion object {
+        private const val TAG = "AccessibilityDetector"
+    }
+
+    private var listener: ForegroundDetector.Listener? = null
+
+    override val isRunning: Boolean
+        get() = listener != null
+
+    override fun start(listener: ForegroundDetector.Listener) {
+        this.listener = listener
+    }
+
+    override fun stop() {
+        listener = null
+    }
+
+    fun onAccessibilityEvent(event: AccessibilityEvent) {
+        val target = listener ?: return
+        when (event.eventType) {
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED -> {
+                val eventPackage = event.packageName
+                val className = event.className
+                if (eventPackage != null && className != null) {
+                    target.onForeground(eventPackage, className, true, LockLatencyTracker.now())
+                }
+            }
+            AccessibilityEvent.TYPE_WINDOWS_CHANGED -> onWindowsChanged(target)
+        }
+    }
+
+    // Multi-window detection: an app in split screen or freeform is visible without being
+    // the active window, so it never sends a state change of its own
+    private fun onWindowsChanged(target: ForegroundDetector.Listener) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return
+        val appWindows = try {
+            service.windows
+        } catch (e: Exception) {
+            LogUtilManager.e(TAG, "Failed to read windows: ${e.message}")
+            return
+        }
+        for (window in appWindows) {
+            if (window.type != AccessibilityWindowInfo.TYPE_APPLICATION || window.isActive) continue
+            val root = window.root ?: continue
+            val windowPackage = root.packageName
+            @Suppress("DEPRECATION")
+            root.recycle()
+            if (windowPackage != null) {
+                val title = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) window.title else null
+                target.onForeground(windowPackage, title ?: "", false, LockLatencyTracker.now())
+            }
+        }
+    }
+}
@@ -2,140 +2,296 @@ package com.example.newapplocker
 
 import android.accessibilityservice.AccessibilityService
 import android.accessibilityservice.AccessibilityServiceInfo
-import android.content.Context
 import android.content.Intent
 import android.os.Build
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.Looper
+import android.os.Process
+import android.os.SystemClock
 import android.view.accessibility.AccessibilityEvent
-import android.util.Log
+import com.example.newapplocker.core.ForegroundDetector
+import com.example.newapplocker.core.LockDecider
+import com.example.newapplocker.core.LockScheduler
+import com.example.newapplocker.core.PackageIdSet
+import com.example.newapplocker.core.PackageIdTable
+import com.example.newapplocker.core.WindowEventCoalescer
+import com.example.newapplocker.utils.LogUtilManager
 
+/**
+ * Watches window-state changes and locks protected apps.
+ *
+ * Window events reach [onWindowShown] through an [AccessibilityForegroundDetector], which is
+ * only started while [ForegroundDetection.ACCESSIBILITY] is the selected engine. Events arrive
+ * on the main thread, which only interns the package, drops repeats and handles the lock UI.
+ * Everything else, the [LockDecisionPipeline] from the policy read to the Flutter bus, runs on
+ * a dedicated decision thread, so disk I/O or a long frame on the main thread cannot hold up a
+ * decision. A decision to lock hops back to the front of the main queue for GLOBAL_ACTION_HOME
+ * and the PIN pad.
+ *
+ * Fields are confined to one of the two threads as marked. Values the decision thread reads
+ * from the main thread are written before the event is posted, and the message queue
+ * publishes them.
+ */
 class AccessibilityService : AccessibilityService() {
 
     companion object {
         private const val TAG = "AppLockerAccessibility"
+        private const val KEY_COALESCE_WINDOW_MS = "event_coalesce_window_ms"
+        const val KEY_MULTI_WINDOW_DETECTION = "multi_window_detection_enabled"
+        // Upper bound on waiting for the launcher's window event before showing the PIN pad
+        private const val LAUNCHER_WAIT_TIMEOUT_MS = 500L
+        @Volatile
         private var instance: AccessibilityService? = null
-        private var lastActivePackage: String? = null
-        var lockedApps = setOf<String>()
 
         fun getInstance(): AccessibilityService? = instance
 
         fun isServiceRunning(): Boolean = instance != null
+    }
 
-        fun updateLockedApps(context: Context, updatedLockedApps: List<String>) {
-            lockedApps = updatedLockedApps.toSet()
-            Log.d(TAG, "Locked apps updated directly: ${lockedApps.joinToString(", ")}")
-        }
+    // Written on the main thread before any event is posted
+    private lateinit var decisionPipeline: LockDecisionPipeline
+    private val packageIds = PackageIdTable.SHARED
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private lateinit var decisionThread: HandlerThread
+    private lateinit var decisionHandler: Handler
+
+    // Main thread
+    private val foregroundDetector = AccessibilityForegroundDetector(this)
+    private val foregroundListener = ForegroundDetector.Listener { eventPackage, className, active, detectedNanos ->
+        onWindowShown(eventPackage, className, active, detectedNanos)
     }
+    private val eventCoalescer = WindowEventCoalescer(WindowEventCoalescer.DEFAULT_WINDOW_MS)
+    // Unfocused windows repeat too, but must not swallow the focused window's events
+    private val sideWindowCoalescer = WindowEventCoalescer(WindowEventCoalescer.DEFAULT_WINDOW_MS)
+    private var homePackageIds = PackageIdSet.EMPTY
+    private var lockOverlay: LockOverlayPresenter? = null
+
+    // Main thread: event rate accounting, see eventStats()
+    private var statsSinceUptimeMs = 0L
+    private var stateEventsReceived = 0L
+    private var windowsEventsReceived = 0L
+    private var eventsAccepted = 0L
+
+    // Main thread: holds a lock until the launcher is up after GLOBAL_ACTION_HOME
+    private val lockScheduler = LockScheduler(
+        { SystemClock.uptimeMillis() },
+        object : LockScheduler.Scheduler {
+            override fun schedule(task: Runnable, delayMs: Long) {
+                mainHandler.postDelayed(task, delayMs)
+            }
+
+            override fun cancel(task: Runnable) {
+                mainHandler.removeCallbacks(task)
+            }
+        },
+        LAUNCHER_WAIT_TIMEOUT_MS
+    ) { packageName, eventUptimeMs -> presentLock(packageName, eventUptimeMs) }
 
     override fun onCreate() {
         super.onCreate()
         instance = this
-        Log.d(TAG, "Accessibility Service Created")
+        decisionPipeline = LockDecisionPipeline(this)
+        decisionThread = HandlerThread("lock-decision", Process.THREAD_PRIORITY_FOREGROUND).also { it.start() }
+        decisionHandler = Handler(decisionThread.looper)
+        LogUtilManager.d(TAG) { "Accessibility Service Created" }
     }
 
     override fun onServiceConnected() {
         super.onServiceConnected()
-        Log.d(TAG, "Accessibility Service Connected")
+        LogUtilManager.d(TAG) { "Accessibility Service Connected" }
+
+        // Seed the classifier with the launchers actually installed on this device
+        homePackageIds = PackageIdSet.of(packageIds, decisionPipeline.refreshHomePackages())
+
+        applyServiceInfo()
+
+        // Window inside which repeated events for the same package are collapsed
+        eventCoalescer.windowMs = getSharedPreferences(LockPolicyStore.PREFS_NAME, MODE_PRIVATE)
+            .getLong(KEY_COALESCE_WINDOW_MS, WindowEventCoalescer.DEFAULT_WINDOW_MS)
+        eventCoalescer.reset()
+        sideWindowCoalescer.windowMs = eventCoalescer.windowMs
+        sideWindowCoalescer.reset()
+
+        // Warm the policy snapshot so the first event does not hit the preferences file
+        decisionHandler.post { LockPolicyStore.load(this) }
+
+        // Inflate the PIN pad now so a lock only has to attach it
+        if (lockOverlay == null) {
+            lockOverlay = LockOverlayPresenter(this).also { it.prewarm() }
+        }
+    }
+
+    /**
+     * Subscribes to the narrowest set of events the enabled features need. By default that is
+     * window-state changes only, with no flags: no content-changed events, no key filtering
+     * and no window list. Multi-window detection adds window-list changes and interactive
+     * windows. While another foreground detection engine is selected, no events at all.
+     * Call again whenever one of those features is switched.
+     */
+    fun applyServiceInfo() {
+        val detecting = ForegroundDetection.selected(this) == ForegroundDetection.ACCESSIBILITY
+        val multiWindow = detecting && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP &&
+            getSharedPreferences(LockPolicyStore.PREFS_NAME, MODE_PRIVATE)
+                .getBoolean(KEY_MULTI_WINDOW_DETECTION, false)
 
         val info = AccessibilityServiceInfo()
-        info.eventTypes = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
+        info.eventTypes = if (detecting) AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED else 0
         info.feedbackType = AccessibilityServiceInfo.FEEDBACK_GENERIC
-        info.flags = AccessibilityServiceInfo.FLAG_REPORT_VIEW_IDS or
-                     AccessibilityServiceInfo.FLAG_REQUEST_FILTER_KEY_EVENTS or
-                     AccessibilityServiceInfo.FLAG_RETRIEVE_INTERACTIVE_WINDOWS
+        info.flags = AccessibilityServiceInfo.DEFAULT
         info.notificationTimeout = 0 // Immediate response
+        if (multiWindow) {
+            info.eventTypes = info.eventTypes or AccessibilityEvent.TYPE_WINDOWS_CHANGED
+            info.flags = info.flags or AccessibilityServiceInfo.FLAG_RETRIEVE_INTERACTIVE_WINDOWS
+        }
+        serviceInfo = info
 
+        if (detecting) {
+            foregroundDetector.start(foregroundListener)
+        } else if (foregroundDetector.isRunning) {
+            foregroundDetector.stop()
+            lockScheduler.cancel()
+            decisionHandler.post { decisionPipeline.reset() }
+        }
+        resetEventStats()
+        LogUtilManager.d(TAG) { "Service info applied, detecting: $detecting, multi-window detection: $multiWindow" }
+    }
 
-        serviceInfo = info
+    /** Events received since the service info was last applied; main thread only. */
+    fun eventStats(): Map<String, Any> {
+        val elapsedMs = (SystemClock.uptimeMillis() - statsSinceUptimeMs).coerceAtLeast(1L)
+        val received = stateEventsReceived + windowsEventsReceived
+        return mapOf(
+            "elapsedMs" to elapsedMs,
+            "windowStateEvents" to stateEventsReceived,
+            "windowsChangedEvents" to windowsEventsReceived,
+            "acceptedEvents" to eventsAccepted,
+            "eventsPerMinute" to received * 60_000.0 / elapsedMs
+        )
+    }
 
-        // Load the locked apps from shared preferences
-        val sharedPrefs = getSharedPreferences("app_locker_prefs", MODE_PRIVATE)
-        lockedApps = sharedPrefs.getStringSet("locked_apps", setOf()) ?: setOf()
+    private fun resetEventStats() {
+        statsSinceUptimeMs = SystemClock.uptimeMillis()
+        stateEventsReceived = 0L
+        windowsEventsReceived = 0L
+        eventsAccepted = 0L
     }
 
     override fun onAccessibilityEvent(event: AccessibilityEvent?) {
-        if (event?.eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
-            val packageName = event.packageName?.toString()
-            val className = event.className?.toString()
-
-            if (packageName != null && className != null) {
-                Log.d(TAG, "App switched to: $packageName")
-
-                // Check if monitoring is enabled
-                val sharedPrefs = getSharedPreferences("app_locker_prefs", MODE_PRIVATE)
-                val isMonitoringEnabled = sharedPrefs.getBoolean("accessibility_monitoring_enabled", false)
-                val temporarilyUnlockedApps = sharedPrefs.getStringSet("temporarily_unlocked_apps", setOf()) ?: setOf()
-
-                Log.d(TAG, "Monitoring enabled: $isMonitoringEnabled")
-                Log.d(TAG, "Locked apps: ${lockedApps.joinToString(", ")}")
-                Log.d(TAG, "Temporarily unlocked apps: ${temporarilyUnlockedApps.joinToString(", ")}")
-
-                // Check if we're switching away from a temporarily unlocked app
-                if (lastActivePackage != null && lastActivePackage != packageName) {
-                    if (temporarilyUnlockedApps.contains(lastActivePackage)) {
-                        // App was switched away - re-enable interception after delay
-                        // This is simpler and more reliable than checking running processes
-                        reEnableInterceptionForApp(lastActivePackage!!)
-                        Log.d(TAG, "App $lastActivePackage switched away - re-enabled interception")
-                    }
-                }
-
-                lastActivePackage = packageName
-
-                if (isMonitoringEnabled) {
-                    // Check if this app is locked
-                    if (lockedApps.contains(packageName) && !isSystemPackage(packageName)) {
-                        // Check if app is temporarily unlocked
-                        if (temporarilyUnlockedApps.contains(packageName)) {
-                            Log.d(TAG, "App $packageName is temporarily unlocked - allowing access")
-                        } else {
-                            Log.d(TAG, "LOCKED APP DETECTED - IMMEDIATELY BLOCKING: $packageName")
-                            // CRITICAL: Immediately send app to back + press HOME
-                            performGlobalAction(GLOBAL_ACTION_HOME)
-
-                            // Then show PIN screen on top of launcher after tiny delay
-                            android.os.Handler(android.os.Looper.getMainLooper()).postDelayed({
-                                showLockScreen(packageName)
-                            }, 150) // tiny delay so home screen appears first
-                        }
-                    } else if (packageName != this.packageName) { // Ensure AppLocker itself is not locked
-                        Log.d(TAG, "App $packageName is not locked or is system package")
-                    }
-                } else {
-                    Log.d(TAG, "Accessibility monitoring is disabled")
-                }
-
-                // Send broadcast to notify Flutter app about app switch
-                val intent = Intent("com.example.newapplocker.APP_SWITCHED")
-                intent.putExtra("packageName", packageName)
-                intent.putExtra("className", className)
-                sendBroadcast(intent)
+        when (event?.eventType) {
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED -> stateEventsReceived++
+            AccessibilityEvent.TYPE_WINDOWS_CHANGED -> windowsEventsReceived++
+            else -> return
+        }
+        foregroundDetector.onAccessibilityEvent(event)
+    }
+
+    // See ForegroundDetector.Listener
+    private fun onWindowShown(eventPackage: CharSequence, className: CharSequence, active: Boolean, receivedNanos: Long) {
+        // Resolve the package to its interned ID and canonical String without
+        // converting the CharSequence; only a package's first sighting allocates
+        val packageId = packageIds.intern(eventPackage)
+        val packageName = packageIds.nameOf(packageId)
+
+        // Splash, main activity and dialogs of one launch arrive as a burst; only the
+        // first event for a package runs the lock check and the broadcast
+        val eventUptimeMs = SystemClock.uptimeMillis()
+        val coalescer = if (active) eventCoalescer else sideWindowCoalescer
+        if (!coalescer.accept(packageId, eventUptimeMs)) {
+            return
+        }
+        eventsAccepted++
+
+        if (!active) {
+            // Visible but unfocused, e.g. the other half of a split screen: the focused app
+            // stays the foreground, so this gets a decision of its own
+            if (!homePackageIds.contains(packageId)) {
+                decisionHandler.post { decideSideWindow(packageId, packageName, receivedNanos, eventUptimeMs) }
+            }
+            return
+        }
+
+        if (homePackageIds.contains(packageId)) {
+            // The launcher is showing; a pending PIN pad can go on top of it now
+            lockScheduler.onLauncherShown()
+        } else if (!isSystemPackage(packageName)) {
+            // Another app came to the foreground; any lock for a different app is stale
+            lockScheduler.onAppForeground(packageName)
+            if (lockOverlay?.isShowing == true) lockOverlay?.dismiss()
+        }
+
+        // The event is recycled once we return; only hand over what the decision needs
+        val classNameForBus = if (AppSwitchEventBus.hasSubscriber()) className.toString() else null
+        decisionHandler.post {
+            decide(packageId, packageName, classNameForBus, receivedNanos, eventUptimeMs)
+        }
+    }
+
+    // Decision thread
+    private fun decide(
+        packageId: Int,
+        packageName: String,
+        className: String?,
+        receivedNanos: Long,
+        eventUptimeMs: Long
+    ) {
+        if (decisionPipeline.onForeground(packageId, packageName, className, receivedNanos) == LockDecider.Outcome.LOCK) {
+            // Jump the main queue: send the app home, then show the PIN pad once it is up
+            mainHandler.postAtFrontOfQueue { blockApp(packageName, eventUptimeMs) }
+        }
+    }
+
+    // Decision thread
+    private fun decideSideWindow(packageId: Int, packageName: String, receivedNanos: Long, eventUptimeMs: Long) {
+        if (decisionPipeline.onSideWindow(packageId, packageName, receivedNanos) == LockDecider.Outcome.LOCK) {
+            mainHandler.postAtFrontOfQueue { blockSideWindow(packageName, eventUptimeMs) }
+        }
+    }
+
+    // Main thread
+    private fun blockApp(packageName: String, eventUptimeMs: Long) {
+        // The decision thread may finish one last event after onDestroy
+        if (instance !== this) return
+        // Refused if the user already left the app while the decision was in flight
+        when (lockScheduler.request(packageName, eventUptimeMs)) {
+            LockScheduler.Result.SCHEDULED -> Unit
+            LockScheduler.Result.COLLAPSED -> {
+                // Already sent home for this lock; a second HOME would only restart the animation
+                return
+            }
+            LockScheduler.Result.REFUSED -> {
+                // The user already left the app while the decision was in flight
+                LogUtilManager.d(TAG) { "Dropped stale lock for $packageName" }
+                return
             }
         }
+        performGlobalAction(GLOBAL_ACTION_HOME)
+        LockLatencyTracker.mark(LockLatencyTracker.Stage.HOME_ACTION)
+    }
+
+    // Main thread
+    private fun blockSideWindow(packageName: String, eventUptimeMs: Long) {
+        if (instance !== this) return
+        if (lockScheduler.requestSideWindow(packageName, eventUptimeMs) != LockScheduler.Result.SCHEDULED) {
+            return
+        }
+        performGlobalAction(GLOBAL_ACTION_HOME)
+        LockLatencyTracker.mark(LockLatencyTracker.Stage.HOME_ACTION)
     }
 
     private fun isSystemPackage(packageName: String): Boolean {
-        // Skip our own app
-        if (packageName == this.packageName) return true
-
-        // Skip system UI and launcher apps
-        val systemPackages = setOf(
-            "com.android.systemui",
-            "com.android.launcher",
-            "com.google.android.launcher",
-            "com.miui.home",
-            "com.huawei.android.launcher",
-            "com.oneplus.launcher"
-        )
-        return systemPackages.any { packageName.contains(it) } ||
-               packageName.contains("launcher") ||
-               packageName.startsWith("com.android.") ||
-               packageName.startsWith("com.google.android.") ||
-               packageName == "android"
+        return decisionPipeline.isSystemPackage(packageName)
+    }
+
+    private fun presentLock(packageName: String, eventUptimeMs: Long) {
+        if (lockOverlay?.show(packageName, eventUptimeMs) != true) {
+            showLockScreen(packageName)
+        }
     }
 
     private fun showLockScreen(packageName: String) {
         try {
-            Log.d(TAG, "🔐 STEP 1: Creating unlock intent for package: $packageName")
+            LogUtilManager.d(TAG) { "🔐 STEP 1: Creating unlock intent for package: $packageName" }
 
             // Create intent to launch our native PIN unlock activity directly
             val intent = Intent(this, PinUnlockActivity::class.java)
@@ -145,35 +301,27 @@ class AccessibilityService : AccessibilityService() {
             intent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP)
             intent.addFlags(Intent.FLAG_ACTIVITY_NO_ANIMATION)
 
-            Log.d(TAG, "🔐 STEP 2: Starting PinUnlockActivity directly for package: $packageName")
+            LogUtilManager.d(TAG) { "🔐 STEP 2: Starting PinUnlockActivity directly for package: $packageName" }
             startActivity(intent)
-            Log.d(TAG, "🔐 STEP 3: PinUnlockActivity started successfully")
-        } catch (e: Exception) {
-            Log.e(TAG, "🔐 ERROR: Failed to start unlock activity: ${e.message}")
-        }
-    }
-
-    private fun reEnableInterceptionForApp(packageName: String) {
-        try {
-            val sharedPrefs = getSharedPreferences("app_locker_prefs", MODE_PRIVATE)
-            val editor = sharedPrefs.edit()
-            val temporarilyUnlockedApps = sharedPrefs.getStringSet("temporarily_unlocked_apps", setOf())?.toMutableSet() ?: mutableSetOf()
-            temporarilyUnlockedApps.remove(packageName)
-            editor.putStringSet("temporarily_unlocked_apps", temporarilyUnlockedApps)
-            editor.apply()
-            Log.d(TAG, "Re-enabled interception for app: $packageName")
+            LogUtilManager.d(TAG) { "🔐 STEP 3: PinUnlockActivity started successfully" }
         } catch (e: Exception) {
-            Log.e(TAG, "Failed to re-enable interception for app: ${e.message}")
+            LogUtilManager.e(TAG, "🔐 ERROR: Failed to start unlock activity: ${e.message}")
         }
     }
 
     override fun onInterrupt() {
-        Log.d(TAG, "Accessibility Service Interrupted")
+        LogUtilManager.d(TAG) { "Accessibility Service Interrupted" }
     }
 
     override fun onDestroy() {
         super.onDestroy()
+        foregroundDetector.stop()
+        decisionThread.quitSafely()
+        lockScheduler.cancel()
+        mainHandler.removeCallbacksAndMessages(null)
+        lockOverlay?.release()
+        lockOverlay = null
         instance = null
-        Log.d(TAG, "Accessibility Service Destroyed")
+        LogUtilManager.d(TAG) { "Accessibility Service Destroyed" }
     }
 }
@@ -0,0 +1,178 @@
+package com.example.newapplocker
+
+import android.content.Context
+import android.content.pm.PackageManager
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.os.Build
+import android.os.Handler
+import android.os.Looper
+import android.util.LruCache
+import com.example.newapplocker.utils.LogUtilManager
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Two-tier cache of pre-encoded app icons.
+ *
+ * Icons are rendered once at a normalized size, encoded as WebP and stored under
+ * `cacheDir/app_icons` keyed by package, version code and size. A byte-bounded LRU keeps the
+ * hot set in memory. Because the version code is part of the key an updated app never serves
+ * a stale icon, and [invalidate] (driven by the package change listener) also drops the old
+ * files eagerly.
+ */
+object AppIconCache {
+    private const val TAG = "AppIconCache"
+    private const val DIR_NAME = "app_icons"
+    private const val MEMORY_BYTES = 4 * 1024 * 1024
+    private const val WEBP_QUALITY = 90
+    private const val MAX_DECODE_THREADS = 4
+
+    const val DEFAULT_SIZE_PX = 96
+
+    private val memory = object : LruCache<String, ByteArray>(MEMORY_BYTES) {
+        override fun sizeOf(key: String, value: ByteArray): Int = value.size
+    }
+    private val versionCodes = ConcurrentHashMap<String, Long>()
+    private val executor = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors().coerceIn(1, MAX_DECODE_THREADS)
+    ) { r -> Thread(r, "app-icon-cache") }
+    private val mainHandler = Handler(Looper.getMainLooper())
+
+    /** Resolves the icon off the main thread and delivers it (or null) on the main thread. */
+    fun getAsync(context: Context, packageName: String, sizePx: Int, callback: (ByteArray?) -> Unit) {
+        val appContext = context.applicationContext
+        executor.execute {
+            val icon = get(appContext, packageName, sizePx)
+            mainHandler.post { callback(icon) }
+        }
+    }
+
+    /**
+     * Resolves a batch of icons in parallel on the bounded decode pool and delivers them in
+     * one map on the main thread. Packages without an icon are left out of the map.
+     */
+    fun getAllAsync(context: Context, packageNames: List<String>, sizePx: Int, callback: (Map<String, ByteArray>) -> Unit) {
+        if (packageNames.isEmpty()) {
+            callback(emptyMap())
+            return
+        }
+
+        val appContext = context.applicationContext
+        val icons = ConcurrentHashMap<String, ByteArray>(packageNames.size)
+        val remaining = AtomicInteger(packageNames.size)
+        for (packageName in packageNames) {
+            executor.execute {
+                try {
+                    get(appContext, packageName, sizePx)?.let { icons[packageName] = it }
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        mainHandler.post { callback(icons) }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Blocking lookup; call from a background thread. */
+    fun get(context: Context, packageName: String, sizePx: Int = DEFAULT_SIZE_PX): ByteArray? {
+        val versionCode = versionCode(context, packageName) ?: return null
+        val key = key(packageName, versionCode, sizePx)
+
+        memory.get(key)?.let { return it }
+
+        val file = File(cacheDir(context), "$key.webp")
+        if (file.isFile) {
+            try {
+                val bytes = file.readBytes()
+                memory.put(key, bytes)
+                return bytes
+            } catch (e: Exception) {
+                LogUtilManager.w(TAG, "Discarding unreadable icon $key: ${e.message}")
+                file.delete()
+            }
+        }
+
+        val bytes = render(context, packageName, sizePx) ?: return null
+        memory.put(key, bytes)
+        write(file, bytes)
+        return bytes
+    }
+
+    /** Drops every cached size and version of [packageName]. */
+    fun invalidate(context: Context, packageName: String) {
+        versionCodes.remove(packageName)
+        val prefix = "$packageName@"
+        memory.snapshot().keys.filter { it.startsWith(prefix) }.forEach { memory.remove(it) }
+        cacheDir(context).listFiles { _, name -> name.startsWith(prefix) }?.forEach { it.delete() }
+        LogUtilManager.d(TAG) { "Invalidated icons for $packageName" }
+    }
+
+    private fun versionCode(context: Context, packageName: String): Long? {
+        versionCodes[packageName]?.let { return it }
+        return try {
+            val packageInfo = context.packageManager.getPackageInfo(packageName, 0)
+            val versionCode = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                packageInfo.longVersionCode
+            } else {
+                @Suppress("DEPRECATION")
+                packageInfo.versionCode.toLong()
+            }
+            versionCodes[packageName] = versionCode
+            versionCode
+        } catch (e: PackageManager.NameNotFoundException) {
+            null
+        }
+    }
+
+    private fun render(context: Context, packageName: String, sizePx: Int): ByteArray? {
+        return try {
+            val packageManager = context.packageManager
+            val drawable = packageManager.getApplicationInfo(packageName, 0).loadIcon(packageManager)
+
+            // Normalize every icon to the same square size before encoding
+            val bitmap = Bitmap.createBitmap(sizePx, sizePx, Bitmap.Config.ARGB_8888)
+            val canvas = Canvas(bitmap)
+            drawable.setBounds(0, 0, sizePx, sizePx)
+            drawable.draw(canvas)
+
+            val format = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                Bitmap.CompressFormat.WEBP_LOSSY
+            } else {
+                @Suppress("DEPRECATION")
+                Bitmap.CompressFormat.WEBP
+            }
+            val stream = ByteArrayOutputStream()
+            bitmap.compress(format, WEBP_QUALITY, stream)
+            bitmap.recycle()
+            stream.toByteArray()
+        } catch (e: Exception) {
+            LogUtilManager.w(TAG, "Failed to render icon for $packageName: ${e.message}")
+            null
+        }
+    }
+
+    private fun write(file: File, bytes: ByteArray) {
+        // Write to a temp file and rename so a crash never leaves a truncated icon behind
+        val temp = File(file.parentFile, "${file.name}.${Thread.currentThread().id}.tmp")
+        try {
+            FileOutputStream(temp).use { it.write(bytes) }
+            if (!temp.renameTo(file)) temp.delete()
+        } catch (e: Exception) {
+            LogUtilManager.w(TAG, "Failed to persist icon ${file.name}: ${e.message}")
+            temp.delete()
+        }
+    }
+
+    private fun cacheDir(context: Context): File {
+        return File(context.cacheDir, DIR_NAME).apply { mkdirs() }
+    }
+
+    private fun key(packageName: String, versionCode: Long, sizePx: Int): String {
+        return "$packageName@$versionCode@$sizePx"
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.newapplocker
+
+import android.os.Handler
+import android.os.Looper
+import com.example.newapplocker.core.AppSwitchRingBuffer
+import com.example.newapplocker.utils.LogUtilManager
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * In-process replacement for the APP_SWITCHED broadcast.
+ *
+ * The [LockDecisionPipeline] of the selected foreground detector publishes every accepted
+ * switch here from its decision thread, which is the ring's single producer. While nobody is
+ * subscribed [publish] returns immediately, so there is no IPC and no allocation. While
+ * Flutter is attached, events are queued in a lock-free ring and flushed to the subscriber on
+ * the main thread in batches, one delivery per [FLUSH_DELAY_MS] at most.
+ */
+object AppSwitchEventBus {
+    private const val TAG = "AppSwitchEventBus"
+    private const val CAPACITY = 64
+    private const val FLUSH_DELAY_MS = 100L
+
+    fun interface Subscriber {
+        fun onAppSwitchBatch(events: List<Map<String, Any>>)
+    }
+
+    private val ring = AppSwitchRingBuffer(CAPACITY)
+    private val flushScheduled = AtomicBoolean(false)
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private val flushRunnable = Runnable { flush() }
+
+    @Volatile
+    private var subscriber: Subscriber? = null
+
+    fun hasSubscriber(): Boolean = subscriber != null
+
+    /** Must be called on the main thread. Replaces any existing subscriber. */
+    fun subscribe(newSubscriber: Subscriber) {
+        ring.clear()
+        subscriber = newSubscriber
+        LogUtilManager.d(TAG) { "Subscriber attached" }
+    }
+
+    /** Must be called on the main thread. */
+    fun unsubscribe(existing: Subscriber) {
+        if (subscriber !== existing) return
+        subscriber = null
+        mainHandler.removeCallbacks(flushRunnable)
+        flushScheduled.set(false)
+        ring.clear()
+        LogUtilManager.d(TAG) { "Subscriber detached, dropped ${ring.droppedCount()} events while attached" }
+    }
+
+    fun publish(packageName: String, className: String, timestampMs: Long) {
+        if (subscriber == null) return
+
+        ring.offer(packageName, className, timestampMs)
+        if (flushScheduled.compareAndSet(false, true)) {
+            mainHandler.postDelayed(flushRunnable, FLUSH_DELAY_MS)
+        }
+    }
+
+    private fun flush() {
+        flushScheduled.set(false)
+        val target = subscriber ?: return
+
+        val batch = ArrayList<Map<String, Any>>()
+        ring.drain { packageName, className, timestampMs ->
+            batch.add(mapOf(
+                "packageName" to packageName,
+                "className" to className,
+                "timestamp" to timestampMs
+            ))
+        }
+        if (batch.isNotEmpty()) {
+            target.onAppSwitchBatch(batch)
+        }
+    }
+}
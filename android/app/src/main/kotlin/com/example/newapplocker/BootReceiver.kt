@@ -28,6 +28,9 @@ class BootReceiver : BroadcastReceiver() {
                 Log.d(TAG, "System event detected, starting app locker services")
 
                 try {
+                    // Boot is one of the few moments a foreground service may start from the background
+                    ForegroundDetection.apply(context)
+
                     // Start the main application
                     val launchIntent = context.packageManager.getLaunchIntentForPackage(context.packageName)
                     if (launchIntent != null) {
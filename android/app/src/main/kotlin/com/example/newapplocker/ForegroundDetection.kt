@@ -0,0 +1,101 @@
+package com.example.newapplocker
+
+import android.content.Context
+import android.content.Intent
+import android.os.Build
+import com.example.newapplocker.utils.LockUtilManager
+import com.example.newapplocker.utils.LogUtilManager
+
+/**
+ * Chooses which foreground detector drives locking.
+ *
+ * [ACCESSIBILITY] (the default) runs on the accessibility service's window events. [USAGE_STATS]
+ * polls usage events from [UsageStatsMonitorService] instead, for devices whose OEM keeps
+ * killing accessibility services; it needs usage access. The choice lives in
+ * `app_locker_prefs`, and [apply] brings both engines in line with it: exactly one of them
+ * reports switches, the other stays idle.
+ *
+ * Starting [USAGE_STATS] can still fail after it was selected, e.g. when the system refuses
+ * the foreground service. [onUsageStatsFailed] then falls back to [ACCESSIBILITY], so locking
+ * never silently stops, and keeps the reason for Flutter in [lastError].
+ */
+object ForegroundDetection {
+    private const val TAG = "ForegroundDetection"
+
+    const val KEY_ENGINE = "foreground_detection_engine"
+    const val ACCESSIBILITY = "accessibility"
+    const val USAGE_STATS = "usage_stats"
+
+    /** Why the usage stats engine last failed to start, or null if it has not since [select]. */
+    @Volatile
+    var lastError: String? = null
+        private set
+
+    fun selected(context: Context): String {
+        val engine = context.applicationContext
+            .getSharedPreferences(LockPolicyStore.PREFS_NAME, Context.MODE_PRIVATE)
+            .getString(KEY_ENGINE, ACCESSIBILITY)
+        return if (engine == USAGE_STATS) USAGE_STATS else ACCESSIBILITY
+    }
+
+    /**
+     * Persists [engine] and applies it. Returns false for an unknown engine, or for
+     * [USAGE_STATS] while usage access is not granted.
+     */
+    fun select(context: Context, engine: String): Boolean {
+        if (engine != ACCESSIBILITY && engine != USAGE_STATS) return false
+        lastError = null
+        if (engine == USAGE_STATS && !LockUtilManager.isUsageStatsPermissionGranted(context)) {
+            LogUtilManager.e(TAG, "Usage access not granted; keeping ${selected(context)}")
+            return false
+        }
+
+        context.applicationContext
+            .getSharedPreferences(LockPolicyStore.PREFS_NAME, Context.MODE_PRIVATE)
+            .edit()
+            .putString(KEY_ENGINE, engine)
+            .apply()
+        apply(context)
+        LogUtilManager.i(TAG, "Foreground detection engine set to: $engine")
+        return true
+    }
+
+    /** Starts or stops each engine to match [selected]. Safe to call repeatedly. */
+    fun apply(context: Context) {
+        val usageStats = selected(context) == USAGE_STATS
+        val appContext = context.applicationContext
+        val serviceIntent = Intent(appContext, UsageStatsMonitorService::class.java)
+        try {
+            if (usageStats) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    appContext.startForegroundService(serviceIntent)
+                } else {
+                    appContext.startService(serviceIntent)
+                }
+            } else if (UsageStatsMonitorService.isRunning()) {
+                appContext.stopService(serviceIntent)
+            }
+        } catch (e: Exception) {
+            if (usageStats) {
+                // Starting a foreground service from the background is refused on Android 12+
+                onUsageStatsFailed(context, "Could not start the usage stats engine: ${e.message}")
+                return
+            }
+            LogUtilManager.e(TAG, "Failed to stop usage stats engine: ${e.message}")
+        }
+        // Unsubscribes from window events while the usage stats engine is in charge
+        AccessibilityService.getInstance()?.applyServiceInfo()
+    }
+
+    /** The usage stats engine could not run; falls back to [ACCESSIBILITY] and records [reason]. */
+    fun onUsageStatsFailed(context: Context, reason: String) {
+        LogUtilManager.e(TAG, "$reason; falling back to $ACCESSIBILITY")
+        lastError = reason
+        context.applicationContext
+            .getSharedPreferences(LockPolicyStore.PREFS_NAME, Context.MODE_PRIVATE)
+            .edit()
+            .putString(KEY_ENGINE, ACCESSIBILITY)
+            .apply()
+        apply(context)
+    }
+}
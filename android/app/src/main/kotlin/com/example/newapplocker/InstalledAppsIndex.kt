@@ -0,0 +1,310 @@
+package com.example.newapplocker
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.content.pm.ApplicationInfo
+import android.content.pm.PackageManager
+import android.os.Build
+import android.os.Handler
+import android.os.Looper
+import com.example.newapplocker.core.AppNameOrder
+import com.example.newapplocker.utils.LogUtilManager
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+
+/**
+ * Persistent index of launchable and system apps, keyed by package name.
+ *
+ * The first request performs one full PackageManager scan on a background thread; after that
+ * listings and single-package lookups are served from memory. PACKAGE_ADDED / REMOVED /
+ * CHANGED broadcasts keep the index current by re-resolving only the affected package.
+ */
+object InstalledAppsIndex {
+    private const val TAG = "InstalledAppsIndex"
+    private const val CHUNK_SIZE = 24
+
+    class AppEntry(
+        val packageName: String,
+        val appName: String,
+        val isSystemApp: Boolean,
+        val hasLaunchIntent: Boolean
+    ) {
+        fun toMap(): Map<String, Any> = mapOf(
+            "packageName" to packageName,
+            "appName" to appName,
+            "isSystemApp" to isSystemApp,
+            "hasLaunchIntent" to hasLaunchIntent
+        )
+    }
+
+    /** Receives a streamed listing on the main thread. */
+    interface ChunkSink {
+        fun onChunk(apps: List<Map<String, Any>>)
+        fun onComplete(total: Int)
+    }
+
+    /** Handle for one streamed listing; cancelling stops delivery, not indexing. */
+    class Enumeration internal constructor(private val sink: ChunkSink) {
+        @Volatile
+        private var cancelled = false
+        private var delivered = 0
+
+        fun cancel() {
+            cancelled = true
+        }
+
+        // Called on the index executor
+        internal fun deliverChunk(apps: List<Map<String, Any>>) {
+            if (cancelled) return
+            delivered += apps.size
+            mainHandler.post { if (!cancelled) sink.onChunk(apps) }
+        }
+
+        // Called on the index executor
+        internal fun complete() {
+            val total = delivered
+            mainHandler.post { if (!cancelled) sink.onComplete(total) }
+        }
+    }
+
+    private val entries = ConcurrentHashMap<String, AppEntry>()
+    private val executor = Executors.newSingleThreadExecutor { r -> Thread(r, "installed-apps-index") }
+    private val mainHandler = Handler(Looper.getMainLooper())
+
+    @Volatile
+    private var loaded = false
+
+    @Volatile
+    private var sortedListing: List<Map<String, Any>>? = null
+
+    private var receiverRegistered = false
+
+    private val packageReceiver = object : BroadcastReceiver() {
+        override fun onReceive(context: Context, intent: Intent) {
+            val packageName = intent.data?.schemeSpecificPart ?: return
+            val appContext = context.applicationContext
+
+            // Any change to a package may change its icon
+            executor.execute { AppIconCache.invalidate(appContext, packageName) }
+
+            when (intent.action) {
+                Intent.ACTION_PACKAGE_REMOVED -> {
+                    // An update sends REMOVED + ADDED with EXTRA_REPLACING; the ADDED refreshes it
+                    if (!intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+                        executor.execute { remove(packageName) }
+                    }
+                }
+                Intent.ACTION_PACKAGE_ADDED,
+                Intent.ACTION_PACKAGE_CHANGED,
+                Intent.ACTION_PACKAGE_REPLACED -> {
+                    executor.execute { refresh(appContext, packageName) }
+                }
+            }
+        }
+    }
+
+    /** Registers the package change listener. Safe to call more than once. */
+    @Synchronized
+    fun init(context: Context) {
+        if (receiverRegistered) return
+
+        val filter = IntentFilter().apply {
+            addAction(Intent.ACTION_PACKAGE_ADDED)
+            addAction(Intent.ACTION_PACKAGE_REMOVED)
+            addAction(Intent.ACTION_PACKAGE_CHANGED)
+            addAction(Intent.ACTION_PACKAGE_REPLACED)
+            addDataScheme("package")
+        }
+        val appContext = context.applicationContext
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            appContext.registerReceiver(packageReceiver, filter, Context.RECEIVER_NOT_EXPORTED)
+        } else {
+            appContext.registerReceiver(packageReceiver, filter)
+        }
+        receiverRegistered = true
+    }
+
+    /** Delivers the full, name-sorted listing on the main thread. */
+    fun getAllAsync(context: Context, callback: (List<Map<String, Any>>) -> Unit) {
+        val cached = sortedListing
+        if (cached != null) {
+            callback(cached)
+            return
+        }
+
+        val appContext = context.applicationContext
+        executor.execute {
+            ensureLoaded(appContext)
+            val listing = listing()
+            mainHandler.post { callback(listing) }
+        }
+    }
+
+    /**
+     * Streams the listing to [sink] in chunks. A cold index is enumerated and each chunk is
+     * delivered as soon as it resolves; a warm index is replayed from memory in name order.
+     */
+    fun enumerateAsync(context: Context, sink: ChunkSink): Enumeration {
+        val enumeration = Enumeration(sink)
+        val appContext = context.applicationContext
+        executor.execute {
+            if (loaded) {
+                listing().chunked(CHUNK_SIZE).forEach { enumeration.deliverChunk(it) }
+            } else {
+                ensureLoaded(appContext, enumeration)
+            }
+            enumeration.complete()
+        }
+        return enumeration
+    }
+
+    /** Delivers a single entry (or null if the package is not listed) on the main thread. */
+    fun getAppAsync(context: Context, packageName: String, callback: (AppEntry?) -> Unit) {
+        if (loaded) {
+            callback(entries[packageName])
+            return
+        }
+
+        val appContext = context.applicationContext
+        executor.execute {
+            val entry = entries[packageName] ?: refresh(appContext, packageName)
+            mainHandler.post { callback(entry) }
+        }
+    }
+
+    /** In-memory lookup only; returns null if the index has not been loaded yet. */
+    fun peek(packageName: String): AppEntry? = entries[packageName]
+
+    private fun listing(): List<Map<String, Any>> {
+        sortedListing?.let { return it }
+
+        val listing = entries.values
+            .sortedWith(AppNameOrder.byName { it.appName })
+            .map { it.toMap() }
+        sortedListing = listing
+        return listing
+    }
+
+    // Runs on the index executor
+    private fun remove(packageName: String) {
+        if (entries.remove(packageName) != null) {
+            sortedListing = null
+            LogUtilManager.d(TAG) { "Removed $packageName" }
+        }
+    }
+
+    // Runs on the index executor
+    private fun refresh(context: Context, packageName: String): AppEntry? {
+        val packageManager = context.packageManager
+        val entry = try {
+            val packageInfo = packageManager.getPackageInfo(packageName, 0)
+            packageInfo.applicationInfo?.let { toEntry(packageManager, it) }
+        } catch (e: Exception) {
+            null
+        }
+
+        if (entry != null) {
+            entries[packageName] = entry
+        } else {
+            entries.remove(packageName)
+        }
+        sortedListing = null
+        LogUtilManager.d(TAG) { "Refreshed $packageName -> ${entry != null}" }
+        return entry
+    }
+
+    // Runs on the index executor. Entries are indexed as they are resolved and, when a sink
+    // is given, handed to it in chunks so the UI can render before enumeration finishes.
+    private fun ensureLoaded(context: Context, enumeration: Enumeration? = null) {
+        if (loaded) return
+
+        val packageManager = context.packageManager
+
+        // Method 1: Try getting all packages with different flags for MIUI compatibility
+        var applications: List<ApplicationInfo> = try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                packageManager.getInstalledPackages(PackageManager.PackageInfoFlags.of(PackageManager.GET_META_DATA.toLong()))
+            } else {
+                @Suppress("DEPRECATION")
+                packageManager.getInstalledPackages(PackageManager.GET_META_DATA)
+            }
+        } catch (e: Exception) {
+            // Fallback for MIUI devices
+            try {
+                @Suppress("DEPRECATION")
+                packageManager.getInstalledPackages(0)
+            } catch (e2: Exception) {
+                emptyList()
+            }
+        }.mapNotNull { it.applicationInfo }
+
+        // Method 2: If still empty, enumerate applications directly. ApplicationInfo carries
+        // everything an entry needs, so there is no per-app getPackageInfo round trip.
+        if (applications.isEmpty()) {
+            applications = try {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                    packageManager.getInstalledApplications(PackageManager.ApplicationInfoFlags.of(PackageManager.GET_META_DATA.toLong()))
+                } else {
+                    @Suppress("DEPRECATION")
+                    packageManager.getInstalledApplications(PackageManager.GET_META_DATA)
+                }
+            } catch (e: Exception) {
+                @Suppress("DEPRECATION")
+                packageManager.getInstalledApplications(0)
+            }
+        }
+
+        // Process the applications, streaming them out in chunks as they resolve
+        val chunk = ArrayList<Map<String, Any>>(CHUNK_SIZE)
+        for (applicationInfo in applications) {
+            try {
+                val entry = toEntry(packageManager, applicationInfo) ?: continue
+                entries[entry.packageName] = entry
+                if (enumeration != null) {
+                    chunk.add(entry.toMap())
+                    if (chunk.size == CHUNK_SIZE) {
+                        enumeration.deliverChunk(ArrayList(chunk))
+                        chunk.clear()
+                    }
+                }
+            } catch (e: Exception) {
+                // Log the error but continue processing other apps
+                LogUtilManager.w("QVault", "Error processing app ${applicationInfo.packageName}: ${e.message}")
+            }
+        }
+        if (enumeration != null && chunk.isNotEmpty()) {
+            enumeration.deliverChunk(chunk)
+        }
+
+        sortedListing = null
+        loaded = true
+
+        LogUtilManager.i("QVault") {
+            val systemCount = entries.values.count { it.isSystemApp }
+            "Indexed ${entries.size} apps (${entries.size - systemCount} user apps, $systemCount system apps)"
+        }
+    }
+
+    private fun toEntry(packageManager: PackageManager, applicationInfo: ApplicationInfo): AppEntry? {
+        if (!applicationInfo.enabled) return null
+
+        val packageName = applicationInfo.packageName
+        val appName = try {
+            applicationInfo.loadLabel(packageManager).toString()
+        } catch (e: Exception) {
+            packageName // Fallback to package name
+        }
+
+        val isSystemApp = (applicationInfo.flags and ApplicationInfo.FLAG_SYSTEM) != 0
+
+        // Include app if it's either:
+        // 1. A user app with launch intent
+        // 2. A system app (regardless of launch intent for system apps tab)
+        val hasLaunchIntent = packageManager.getLaunchIntentForPackage(packageName) != null
+
+        if (!hasLaunchIntent && !isSystemApp) return null
+        return AppEntry(packageName, appName, isSystemApp, hasLaunchIntent)
+    }
+}
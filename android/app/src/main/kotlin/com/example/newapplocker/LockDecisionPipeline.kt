@@ -0,0 +1,157 @@
+package com.example.newapplocker
+
+import android.content.Context
+import android.content.Intent
+import android.content.pm.PackageManager
+import android.os.Build
+import com.example.newapplocker.core.LockDecider
+import com.example.newapplocker.core.PackageIdTable
+import com.example.newapplocker.core.SystemPackageClassifier
+import com.example.newapplocker.utils.LogUtilManager
+
+/**
+ * What happens to a foreground change once a detector has seen it, whichever
+ * [com.example.newapplocker.core.ForegroundDetector] that was.
+ *
+ * [onForeground] reads the policy snapshot, releases the temporary unlock of the app being
+ * left, decides and publishes the switch to the Flutter bus. Showing the lock is left to the
+ * caller, since only the accessibility service can send an app home. [onSideWindow] decides
+ * for an app that is visible but not focused, and leaves the foreground state alone.
+ *
+ * [onForeground] and [onSideWindow] must always be called from the same thread. [refreshHomePackages] and
+ * [isSystemPackage] may be called from any thread.
+ */
+class LockDecisionPipeline(context: Context) {
+
+    companion object {
+        private const val TAG = "LockDecisionPipeline"
+    }
+
+    private val context = context.applicationContext
+    private val packageIds = PackageIdTable.SHARED
+
+    @Volatile
+    private var lockDecider = LockDecider(SystemPackageClassifier.withDefaults(listOf(context.packageName)))
+
+    /** Launchers installed on this device, as of the last [refreshHomePackages]. */
+    @Volatile
+    var homePackages: Set<String> = emptySet()
+        private set
+
+    // Decision thread
+    private var lastActivePackageId = PackageIdTable.NO_ID
+
+    /** Seeds the classifier with the launchers actually installed and returns them. */
+    fun refreshHomePackages(): Set<String> {
+        val resolved = resolveHomePackages().toSet()
+        homePackages = resolved
+        lockDecider = LockDecider(SystemPackageClassifier.withDefaults(resolved + context.packageName))
+        LogUtilManager.d(TAG) { "System package classifier built with launchers: $resolved" }
+        return resolved
+    }
+
+    fun isSystemPackage(packageName: String): Boolean {
+        return lockDecider.isSystemPackage(packageName)
+    }
+
+    /**
+     * Runs the decision for [packageName], which must be interned as [packageId]. [className]
+     * is published to the bus unless null. On [LockDecider.Outcome.LOCK] the latency of this
+     * lock starts at [detectedNanos].
+     */
+    fun onForeground(packageId: Int, packageName: String, className: String?, detectedNanos: Long): LockDecider.Outcome {
+        LogUtilManager.d(TAG) { "App switched to: $packageName" }
+
+        // Read the in-memory policy snapshot; no preference I/O on the event path
+        val policy = LockPolicyStore.current(context)
+
+        // Check if we're switching away from a temporarily unlocked app
+        val previousPackageId = lastActivePackageId
+        if (previousPackageId != PackageIdTable.NO_ID && previousPackageId != packageId) {
+            if (policy.isTemporarilyUnlocked(previousPackageId)) {
+                // App was switched away - revoke its unlock now or after the auto-lock delay
+                // This is simpler and more reliable than checking running processes
+                val previousPackage = packageIds.nameOf(previousPackageId)
+                releaseTemporaryUnlock(previousPackage)
+                LogUtilManager.d(TAG) { "App $previousPackage switched away - released temporary unlock" }
+            }
+        }
+
+        lastActivePackageId = packageId
+
+        val outcome = lockDecider.decide(policy, packageId, packageName)
+        when (outcome) {
+            LockDecider.Outcome.TEMPORARILY_UNLOCKED -> {
+                LogUtilManager.d(TAG) { "App $packageName is temporarily unlocked - allowing access" }
+                // Back in the foreground; stop any pending auto-lock countdown
+                LockPolicyStore.grantTemporaryUnlock(context, packageName)
+            }
+            LockDecider.Outcome.LOCK -> {
+                LockLatencyTracker.begin(detectedNanos)
+                LockLatencyTracker.mark(LockLatencyTracker.Stage.DECISION)
+                LogUtilManager.d(TAG) { "LOCKED APP DETECTED - IMMEDIATELY BLOCKING: $packageName" }
+            }
+            LockDecider.Outcome.NOT_LOCKED -> {
+                if (packageName != context.packageName) { // Ensure AppLocker itself is not locked
+                    LogUtilManager.d(TAG) { "App $packageName is not locked or is system package" }
+                }
+            }
+            LockDecider.Outcome.MONITORING_DISABLED -> {
+                LogUtilManager.d(TAG) { "Accessibility monitoring is disabled" }
+            }
+        }
+
+        // Notify Flutter through the in-process bus; this thread is the ring's only producer
+        if (className != null) {
+            AppSwitchEventBus.publish(packageName, className, System.currentTimeMillis())
+        }
+        return outcome
+    }
+
+    /**
+     * Decides for [packageName], interned as [packageId], shown in a window that is visible but
+     * not focused. It is not the foreground app, so nothing is released, granted or published
+     * and the last foreground app stays as it was. On [LockDecider.Outcome.LOCK] the latency
+     * of this lock starts at [detectedNanos].
+     */
+    fun onSideWindow(packageId: Int, packageName: String, detectedNanos: Long): LockDecider.Outcome {
+        val outcome = lockDecider.decide(LockPolicyStore.current(context), packageId, packageName)
+        if (outcome == LockDecider.Outcome.LOCK) {
+            LockLatencyTracker.begin(detectedNanos)
+            LockLatencyTracker.mark(LockLatencyTracker.Stage.DECISION)
+            LogUtilManager.d(TAG) { "Locked app in side window: $packageName" }
+        }
+        return outcome
+    }
+
+    /** Forgets the last foreground app, e.g. when the detector feeding this pipeline stops. */
+    fun reset() {
+        lastActivePackageId = PackageIdTable.NO_ID
+    }
+
+    private fun releaseTemporaryUnlock(packageName: String) {
+        try {
+            LockPolicyStore.releaseTemporaryUnlock(context, packageName)
+            LogUtilManager.d(TAG) { "Released temporary unlock for app: $packageName" }
+        } catch (e: Exception) {
+            LogUtilManager.e(TAG, "Failed to re-enable interception for app: ${e.message}")
+        }
+    }
+
+    private fun resolveHomePackages(): List<String> {
+        return try {
+            val packageManager = context.packageManager
+            val homeIntent = Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_HOME)
+            val resolved = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                packageManager.queryIntentActivities(homeIntent, PackageManager.ResolveInfoFlags.of(PackageManager.MATCH_DEFAULT_ONLY.toLong()))
+            } else {
+                @Suppress("DEPRECATION")
+                packageManager.queryIntentActivities(homeIntent, PackageManager.MATCH_DEFAULT_ONLY)
+            }
+            resolved.mapNotNull { it.activityInfo?.packageName }.distinct()
+        } catch (e: Exception) {
+            LogUtilManager.e(TAG, "Failed to resolve launcher packages: ${e.message}")
+            emptyList()
+        }
+    }
+}
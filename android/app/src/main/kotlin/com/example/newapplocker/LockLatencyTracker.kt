@@ -0,0 +1,72 @@
+package com.example.newapplocker
+
+import com.example.newapplocker.core.LatencyHistogram
+
+/**
+ * Times each lock from the window event that triggered it to the PIN pad's first frame.
+ *
+ * [begin] stamps the event receipt with the monotonic clock and every later [mark] records
+ * the time since then into the histogram of its [Stage], so each stage's numbers are
+ * cumulative from the event. A stage is recorded at most once per lock. Only one lock is in
+ * flight at a time; starting another one abandons the marks the previous one had left.
+ */
+object LockLatencyTracker {
+
+    enum class Stage(val key: String) {
+        DECISION("decision"),
+        HOME_ACTION("homeAction"),
+        SCREEN_CREATED("screenCreated"),
+        FIRST_FRAME("firstFrame")
+    }
+
+    private val stages = Stage.values()
+    private val histograms = Array(stages.size) { LatencyHistogram() }
+
+    // Guarded by this object's monitor
+    private var eventNanos = 0L
+    private var recordedStages = 0
+
+    /** Current monotonic time, in the clock [begin] expects. */
+    fun now(): Long = System.nanoTime()
+
+    @Synchronized
+    fun begin(eventNanos: Long) {
+        this.eventNanos = eventNanos
+        recordedStages = 0
+    }
+
+    @Synchronized
+    fun mark(stage: Stage) {
+        if (eventNanos == 0L) return
+        val bit = 1 shl stage.ordinal
+        if (recordedStages and bit != 0) return
+
+        recordedStages = recordedStages or bit
+        histograms[stage.ordinal].record((System.nanoTime() - eventNanos) / 1_000L)
+        if (stage == Stage.FIRST_FRAME) {
+            // The lock is complete; ignore stray marks until the next one begins
+            eventNanos = 0L
+        }
+    }
+
+    /** Per-stage counts and percentiles in milliseconds, keyed by [Stage.key]. */
+    fun stats(): Map<String, Map<String, Any>> {
+        return stages.associate { stage ->
+            val summary = histograms[stage.ordinal].summary()
+            stage.key to mapOf(
+                "count" to summary.count,
+                "p50Ms" to summary.p50Us / 1000.0,
+                "p90Ms" to summary.p90Us / 1000.0,
+                "p99Ms" to summary.p99Us / 1000.0,
+                "maxMs" to summary.maxUs / 1000.0
+            )
+        }
+    }
+
+    @Synchronized
+    fun reset() {
+        histograms.forEach { it.reset() }
+        eventNanos = 0L
+        recordedStages = 0
+    }
+}
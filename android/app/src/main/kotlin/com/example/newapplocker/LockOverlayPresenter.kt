@@ -0,0 +1,164 @@
+package com.example.newapplocker
+
+import android.accessibilityservice.AccessibilityService
+import android.content.Context
+import android.graphics.PixelFormat
+import android.os.Build
+import android.os.SystemClock
+import android.view.ContextThemeWrapper
+import android.view.KeyEvent
+import android.view.LayoutInflater
+import android.view.ViewTreeObserver
+import android.view.WindowManager
+import android.widget.FrameLayout
+import com.example.newapplocker.utils.LogUtilManager
+
+/**
+ * Shows the PIN pad as a TYPE_ACCESSIBILITY_OVERLAY window owned by the service.
+ *
+ * The pad is inflated and its buttons bound once in [prewarm], so presenting a lock is an
+ * `addView` of a ready view instead of an activity launch, layout inflation and label lookup.
+ * Back dismisses the overlay; the locked app has already been sent home at that point.
+ * Must be used from the main thread.
+ */
+class LockOverlayPresenter(private val service: AccessibilityService) : PinPadController.Listener {
+
+    companion object {
+        private const val TAG = "LockOverlayPresenter"
+    }
+
+    private val windowManager = service.getSystemService(Context.WINDOW_SERVICE) as WindowManager
+
+    private var root: FrameLayout? = null
+    private var controller: PinPadController? = null
+    private var attached = false
+    private var eventUptimeMs = 0L
+
+    /** Package the overlay is currently guarding, or null when it is not attached. */
+    var shownPackage: String? = null
+        private set
+
+    val isShowing: Boolean
+        get() = attached
+
+    /** Inflates and binds the pad ahead of time. Returns false if overlays are unsupported. */
+    fun prewarm(): Boolean {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP_MR1) return false
+        if (root != null) return true
+
+        return try {
+            val themedContext = ContextThemeWrapper(service, R.style.UnlockTheme)
+            val container = object : FrameLayout(themedContext) {
+                override fun dispatchKeyEvent(event: KeyEvent): Boolean {
+                    if (event.keyCode == KeyEvent.KEYCODE_BACK) {
+                        if (event.action == KeyEvent.ACTION_UP) dismiss()
+                        return true
+                    }
+                    return super.dispatchKeyEvent(event)
+                }
+            }
+            LayoutInflater.from(themedContext).inflate(R.layout.activity_pin_unlock, container, true)
+            controller = PinPadController(themedContext, container, this)
+            root = container
+            LogUtilManager.d(TAG) { "Lock overlay prewarmed" }
+            true
+        } catch (e: Exception) {
+            LogUtilManager.e(TAG, "Failed to prewarm lock overlay: ${e.message}")
+            false
+        }
+    }
+
+    /**
+     * Attaches the prewarmed pad for [packageName]. [eventUptimeMs] is the uptime of the window
+     * event that triggered the lock and is used to log the time to first frame. Returns false
+     * if the overlay could not be shown, in which case the caller should fall back to
+     * [PinUnlockActivity].
+     */
+    fun show(packageName: String, eventUptimeMs: Long): Boolean {
+        if (!prewarm()) return false
+        val view = root ?: return false
+
+        controller?.bind(packageName, resolveAppName(packageName))
+        shownPackage = packageName
+        this.eventUptimeMs = eventUptimeMs
+        if (attached) return true
+
+        return try {
+            view.viewTreeObserver.addOnPreDrawListener(object : ViewTreeObserver.OnPreDrawListener {
+                override fun onPreDraw(): Boolean {
+                    view.viewTreeObserver.removeOnPreDrawListener(this)
+                    LockLatencyTracker.mark(LockLatencyTracker.Stage.FIRST_FRAME)
+                    LogUtilManager.d(TAG) {
+                        "Lock overlay first frame ${SystemClock.uptimeMillis() - this@LockOverlayPresenter.eventUptimeMs}ms after window event"
+                    }
+                    return true
+                }
+            })
+            windowManager.addView(view, layoutParams())
+            attached = true
+            LockLatencyTracker.mark(LockLatencyTracker.Stage.SCREEN_CREATED)
+            LogUtilManager.d(TAG) { "Lock overlay shown for $packageName" }
+            true
+        } catch (e: Exception) {
+            LogUtilManager.e(TAG, "Failed to attach lock overlay: ${e.message}")
+            shownPackage = null
+            false
+        }
+    }
+
+    fun dismiss() {
+        val view = root
+        if (attached && view != null) {
+            try {
+                windowManager.removeView(view)
+            } catch (e: Exception) {
+                LogUtilManager.e(TAG, "Failed to detach lock overlay: ${e.message}")
+            }
+        }
+        attached = false
+        shownPackage = null
+    }
+
+    /** Detaches the overlay and drops the prewarmed view. */
+    fun release() {
+        dismiss()
+        root = null
+        controller = null
+    }
+
+    override fun onPinAccepted(packageName: String) {
+        try {
+            if (PinPadController.unlockAndLaunch(service, packageName)) {
+                LogUtilManager.d(TAG) { "Unlocked and launched $packageName" }
+                dismiss()
+            } else {
+                LogUtilManager.e(TAG, "No launch intent for $packageName")
+                controller?.showError("Cannot launch app")
+            }
+        } catch (e: Exception) {
+            LogUtilManager.e(TAG, "Failed to launch app: ${e.message}")
+            controller?.showError("Failed to unlock")
+        }
+    }
+
+    private fun resolveAppName(packageName: String): String {
+        // The installed apps index usually has the label already; avoid a PackageManager call
+        InstalledAppsIndex.peek(packageName)?.let { return it.appName }
+        return try {
+            val packageManager = service.packageManager
+            packageManager.getApplicationLabel(packageManager.getApplicationInfo(packageName, 0)).toString()
+        } catch (e: Exception) {
+            "Unknown App"
+        }
+    }
+
+    private fun layoutParams(): WindowManager.LayoutParams {
+        return WindowManager.LayoutParams(
+            WindowManager.LayoutParams.MATCH_PARENT,
+            WindowManager.LayoutParams.MATCH_PARENT,
+            WindowManager.LayoutParams.TYPE_ACCESSIBILITY_OVERLAY,
+            WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN,
+            PixelFormat.TRANSLUCENT
+        )
+    }
+}
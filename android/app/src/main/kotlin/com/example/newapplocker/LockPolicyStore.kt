@@ -0,0 +1,321 @@
+package com.example.newapplocker
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.os.Handler
+import android.os.Looper
+import com.example.newapplocker.core.GrantJournal
+import com.example.newapplocker.core.LockPolicy
+import com.example.newapplocker.core.PolicySegment
+import com.example.newapplocker.core.TemporaryUnlockGrants
+import com.example.newapplocker.utils.LogUtilManager
+import java.io.File
+import java.util.concurrent.Executors
+
+/**
+ * Process-wide owner of the current [LockPolicy].
+ *
+ * The accessibility event path only ever calls [current], which is a single volatile read.
+ * Every mutation goes through this object: it persists the change and then swaps in a new
+ * snapshot, so storage is only touched when state changes.
+ *
+ * Locked apps and the monitoring flag live in `app_locker_prefs`. This store is the single
+ * source of truth for locked apps: Flutter changes them one package at a time through
+ * [lockApp] / [unlockApp] and catches up with [lockedAppsVersion], which is bumped on every
+ * change to the set. Whenever the set goes from empty to non-empty or back, the monitoring
+ * flag is switched to match in the same snapshot, whichever caller changed the set.
+ *
+ * Temporary unlocks live in a [TemporaryUnlockGrants] table persisted through an append-only [GrantJournal]. A grant is
+ * held while its app is in the foreground; when the user switches away it is either revoked
+ * at once or, if Flutter's `auto_lock_delay` is set, left to expire that many minutes later.
+ * Expiry is driven by a single Handler callback at the next deadline, never by polling.
+ *
+ * The locked apps and monitoring flag of every published snapshot are also written to a
+ * memory-mapped [PolicySegment]. On start they are restored from it without parsing
+ * preferences, and [current] compares the segment's generation with the one it last saw, so a
+ * write made by another process is picked up on the next read. Temporary unlocks are not
+ * shared: each process keeps them in its own grant table, and a reload takes them from there.
+ */
+object LockPolicyStore {
+    private const val TAG = "LockPolicyStore"
+    private const val JOURNAL_NAME = "temp_unlock.journal"
+    private const val SEGMENT_NAME = "lock_policy.seg"
+    private const val FLUTTER_PREFS_NAME = "FlutterSharedPreferences"
+    private const val KEY_AUTO_LOCK_DELAY = "flutter.auto_lock_delay"
+
+    const val PREFS_NAME = "app_locker_prefs"
+    const val KEY_LOCKED_APPS = "locked_apps"
+    const val KEY_MONITORING_ENABLED = "accessibility_monitoring_enabled"
+    const val KEY_TEMPORARILY_UNLOCKED_APPS = "temporarily_unlocked_apps"
+    const val KEY_LOCKED_APPS_VERSION = "locked_apps_version"
+
+    @Volatile
+    private var policy: LockPolicy? = null
+
+    @Volatile
+    private var segment: PolicySegment? = null
+
+    // Generation of the segment that matches [policy]
+    @Volatile
+    private var segmentGeneration = 0L
+
+    @Volatile
+    private var lockedAppsVersion = 0L
+
+    // Guarded by this object's monitor
+    private val grants = TemporaryUnlockGrants()
+    private var journal: GrantJournal? = null
+
+    // Journal appends are ordered on one thread and never block the caller
+    private val journalExecutor = Executors.newSingleThreadExecutor { r -> Thread(r, "temp-unlock-journal") }
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private val expiryRunnable = Runnable { expireGrants() }
+
+    /**
+     * Returns the current snapshot, loading it from storage the first time it is needed.
+     */
+    fun current(context: Context): LockPolicy {
+        val snapshot = policy ?: return load(context)
+        val policySegment = segment ?: return snapshot
+        // One mapped read; only a write from another process makes these differ
+        if (policySegment.generation() == segmentGeneration) return snapshot
+        return reloadFromSegment()
+    }
+
+    @Synchronized
+    fun load(context: Context): LockPolicy {
+        policy?.let { return it }
+
+        val prefs = prefs(context)
+        loadGrants(context, prefs)
+        grants.expire(System.currentTimeMillis())
+
+        lockedAppsVersion = prefs.getLong(KEY_LOCKED_APPS_VERSION, 0L)
+        val stored = openSegment(context)?.read()?.policy
+        val loaded = if (stored != null) {
+            LockPolicy(stored.lockedApps, grants.packages(), stored.monitoringEnabled)
+        } else {
+            LockPolicy(
+                prefs.getStringSet(KEY_LOCKED_APPS, emptySet())?.toSet() ?: emptySet(),
+                grants.packages(),
+                prefs.getBoolean(KEY_MONITORING_ENABLED, false)
+            )
+        }
+        publish(loaded)
+        scheduleExpiry()
+        LogUtilManager.d(TAG) { "Loaded $loaded from ${if (stored != null) "segment" else "preferences"}" }
+        return loaded
+    }
+
+    /** Version of the locked-app set; changes whenever a package is locked or unlocked. */
+    fun lockedAppsVersion(context: Context): Long {
+        current(context)
+        return lockedAppsVersion
+    }
+
+    /** Replaces the whole locked-app set and returns the new version. */
+    @Synchronized
+    fun setLockedApps(context: Context, packageNames: Collection<String>): Long {
+        return updateLockedApps(context, current(context).withLockedApps(packageNames))
+    }
+
+    /** Locks a single package and returns the new version. */
+    @Synchronized
+    fun lockApp(context: Context, packageName: String): Long {
+        return updateLockedApps(context, current(context).withLockedApp(packageName))
+    }
+
+    /** Unlocks a single package and returns the new version. */
+    @Synchronized
+    fun unlockApp(context: Context, packageName: String): Long {
+        return updateLockedApps(context, current(context).withoutLockedApp(packageName))
+    }
+
+    private fun updateLockedApps(context: Context, changed: LockPolicy): Long {
+        val existing = current(context)
+        if (changed === existing || changed.lockedApps == existing.lockedApps) return lockedAppsVersion
+
+        // Monitoring follows whether anything is locked, so it flips with the set in one snapshot
+        val updated = if (changed.lockedApps.isEmpty() != existing.lockedApps.isEmpty()) {
+            changed.withMonitoringEnabled(changed.lockedApps.isNotEmpty())
+        } else {
+            changed
+        }
+
+        lockedAppsVersion++
+        prefs(context).edit()
+            .putStringSet(KEY_LOCKED_APPS, updated.lockedApps)
+            .putBoolean(KEY_MONITORING_ENABLED, updated.monitoringEnabled)
+            .putLong(KEY_LOCKED_APPS_VERSION, lockedAppsVersion)
+            .apply()
+        publish(updated)
+        return lockedAppsVersion
+    }
+
+    @Synchronized
+    fun setMonitoringEnabled(context: Context, enabled: Boolean) {
+        val updated = current(context).withMonitoringEnabled(enabled)
+        prefs(context).edit().putBoolean(KEY_MONITORING_ENABLED, enabled).apply()
+        publish(updated)
+    }
+
+    /** Grants [packageName] a temporary unlock that lasts while it stays in the foreground. */
+    @Synchronized
+    fun grantTemporaryUnlock(context: Context, packageName: String) {
+        val existing = current(context)
+        if (grants.expiryOf(packageName) == TemporaryUnlockGrants.NO_EXPIRY) return
+
+        grants.grant(packageName, TemporaryUnlockGrants.NO_EXPIRY)
+        persist { it.appendGrant(packageName, TemporaryUnlockGrants.NO_EXPIRY) }
+        publish(existing.withTemporarilyUnlockedApps(grants.packages()))
+    }
+
+    /**
+     * Called when a temporarily unlocked app leaves the foreground. Revokes the grant, or
+     * with a non-zero auto-lock delay lets it expire after that delay.
+     */
+    @Synchronized
+    fun releaseTemporaryUnlock(context: Context, packageName: String) {
+        current(context)
+        // Already counting down (or not granted at all)
+        if (grants.expiryOf(packageName) != TemporaryUnlockGrants.NO_EXPIRY) return
+
+        val delayMs = autoLockDelayMs(context)
+        if (delayMs <= 0L) {
+            revokeTemporaryUnlock(context, packageName)
+            return
+        }
+
+        val expiresAtMs = System.currentTimeMillis() + delayMs
+        grants.grant(packageName, expiresAtMs)
+        persist { it.appendGrant(packageName, expiresAtMs) }
+        scheduleExpiry()
+        LogUtilManager.d(TAG) { "Temporary unlock of $packageName expires in ${delayMs}ms" }
+    }
+
+    @Synchronized
+    fun revokeTemporaryUnlock(context: Context, packageName: String) {
+        val existing = current(context)
+        if (!grants.revoke(packageName)) return
+
+        persist { it.appendRevoke(packageName) }
+        scheduleExpiry()
+        publish(existing.withTemporarilyUnlockedApps(grants.packages()))
+    }
+
+    @Synchronized
+    private fun expireGrants() {
+        val existing = policy ?: return
+        val expired = grants.expire(System.currentTimeMillis())
+        if (expired.isNotEmpty()) {
+            // Expired grants are dropped again on replay, so they need no journal record
+            LogUtilManager.d(TAG) { "Temporary unlocks expired: $expired" }
+            publish(existing.withTemporarilyUnlockedApps(grants.packages()))
+        }
+        scheduleExpiry()
+    }
+
+    private fun scheduleExpiry() {
+        mainHandler.removeCallbacks(expiryRunnable)
+        val nextExpiryMs = grants.nextExpiryMs()
+        if (nextExpiryMs != TemporaryUnlockGrants.NO_EXPIRY) {
+            val delayMs = (nextExpiryMs - System.currentTimeMillis()).coerceAtLeast(0L)
+            mainHandler.postDelayed(expiryRunnable, delayMs)
+        }
+    }
+
+    private fun loadGrants(context: Context, prefs: SharedPreferences) {
+        val grantJournal = GrantJournal(File(context.applicationContext.filesDir, JOURNAL_NAME))
+        journal = grantJournal
+
+        if (grantJournal.exists()) {
+            val records = grantJournal.replay(grants)
+            LogUtilManager.d(TAG) { "Replayed $records temporary unlock records" }
+            return
+        }
+
+        // First run with the journal: carry over the grants from the old StringSet
+        val legacy = prefs.getStringSet(KEY_TEMPORARILY_UNLOCKED_APPS, emptySet()) ?: emptySet()
+        legacy.forEach { grants.grant(it, TemporaryUnlockGrants.NO_EXPIRY) }
+        persist { synchronized(this) { it.compact(grants) } }
+        prefs.edit().remove(KEY_TEMPORARILY_UNLOCKED_APPS).apply()
+        LogUtilManager.d(TAG) { "Migrated ${legacy.size} temporary unlocks to the journal" }
+    }
+
+    // Called with the monitor held, so journal operations are queued in mutation order
+    private fun persist(write: (GrantJournal) -> Unit) {
+        val grantJournal = journal ?: return
+        journalExecutor.execute {
+            try {
+                write(grantJournal)
+                synchronized(this) { grantJournal.compactIfNeeded(grants) }
+            } catch (e: Exception) {
+                LogUtilManager.e(TAG, "Failed to write temporary unlock journal: ${e.message}")
+            }
+        }
+    }
+
+    private fun autoLockDelayMs(context: Context): Long {
+        // Flutter stores ints as longs; the setting is in minutes
+        val minutes = try {
+            context.applicationContext
+                .getSharedPreferences(FLUTTER_PREFS_NAME, Context.MODE_PRIVATE)
+                .getLong(KEY_AUTO_LOCK_DELAY, 0L)
+        } catch (e: ClassCastException) {
+            0L
+        }
+        return minutes.coerceAtLeast(0L) * 60_000L
+    }
+
+    @Synchronized
+    private fun reloadFromSegment(): LockPolicy {
+        val existing = policy!!
+        val snapshot = segment?.read() ?: return existing
+        if (snapshot.generation == segmentGeneration) return existing
+
+        val shared = snapshot.policy
+        val reloaded = LockPolicy(shared.lockedApps, grants.packages(), shared.monitoringEnabled)
+        if (shared.lockedApps != existing.lockedApps) {
+            // Flutter catches up by version, so a change made elsewhere needs a new one here
+            lockedAppsVersion++
+        }
+        policy = reloaded
+        segmentGeneration = snapshot.generation
+        LogUtilManager.d(TAG) { "Reloaded $reloaded at generation ${snapshot.generation}" }
+        return reloaded
+    }
+
+    private fun openSegment(context: Context): PolicySegment? {
+        segment?.let { return it }
+        return try {
+            PolicySegment.open(File(context.applicationContext.filesDir, SEGMENT_NAME)).also { segment = it }
+        } catch (e: Exception) {
+            LogUtilManager.e(TAG, "Failed to open policy segment: ${e.message}")
+            null
+        }
+    }
+
+    private fun publish(updated: LockPolicy) {
+        val existing = policy
+        val sharedChanged = existing == null ||
+            existing.monitoringEnabled != updated.monitoringEnabled ||
+            existing.lockedApps != updated.lockedApps
+        // Write the segment first so current() never sees a newer generation for an older policy
+        val policySegment = segment
+        if (sharedChanged && policySegment != null) {
+            try {
+                segmentGeneration = policySegment.write(
+                    LockPolicy(updated.lockedApps, emptySet(), updated.monitoringEnabled)
+                )
+            } catch (e: Exception) {
+                LogUtilManager.e(TAG, "Failed to write policy segment: ${e.message}")
+            }
+        }
+        policy = updated
+        LogUtilManager.d(TAG) { "Published $updated" }
+    }
+
+    private fun prefs(context: Context): SharedPreferences {
+        return context.applicationContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    }
+}
@@ -11,15 +11,9 @@ import android.app.admin.DevicePolicyManager
 import android.content.ComponentName
 import android.content.Context
 import android.os.Build
-import android.content.SharedPreferences
 import android.content.BroadcastReceiver
 import android.content.IntentFilter
-import android.content.pm.PackageManager
-import android.graphics.drawable.Drawable
-import android.graphics.Bitmap
-import android.graphics.Canvas
 import android.os.Bundle
-import java.io.ByteArrayOutputStream
 
 // Import our utility classes
 import com.example.newapplocker.utils.ToastUtilManager
@@ -32,17 +26,27 @@ class MainActivity: FlutterActivity() {
     private val PLATFORM_CHANNEL = "app_locker_channel"
     private val EVENT_CHANNEL = "app_locker_events"
     private val PERMISSIONS_CHANNEL = "app_locker_permissions"
+    private val INSTALLED_APPS_CHANNEL = "app_locker_installed_apps"
     private lateinit var devicePolicyManager: DevicePolicyManager
     private lateinit var adminComponent: ComponentName
-    private lateinit var sharedPreferences: SharedPreferences
     private var eventSink: EventChannel.EventSink? = null
+    private var appsEnumeration: InstalledAppsIndex.Enumeration? = null
     private var pendingUnlockRequest: Pair<String, String>? = null // (action, packageName)
+    private val appSwitchSubscriber = AppSwitchEventBus.Subscriber { events ->
+        eventSink?.success(mapOf(
+            "type" to "app_switch_batch",
+            "events" to events
+        ))
+    }
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
 
         // Initialize utility classes
         MainUtilManager.getInstance().init(this)
+        InstalledAppsIndex.init(this)
+        // Restart the usage stats engine if it is selected and was stopped
+        ForegroundDetection.apply(this)
         LogUtilManager.i("MainActivity", "App started - ${AppUtilsManager.getDeviceInfo()}")
 
         handleIntent(intent)
@@ -54,6 +58,12 @@ class MainActivity: FlutterActivity() {
         handleIntent(intent)
     }
 
+    override fun onDestroy() {
+        AppSwitchEventBus.unsubscribe(appSwitchSubscriber)
+        appsEnumeration?.cancel()
+        super.onDestroy()
+    }
+
     private fun handleIntent(intent: Intent?) {
         LogUtilManager.i("MainActivity", "🔐 STEP 4: handleIntent called")
 
@@ -98,7 +108,6 @@ class MainActivity: FlutterActivity() {
 
         devicePolicyManager = getSystemService(Context.DEVICE_POLICY_SERVICE) as DevicePolicyManager
         adminComponent = ComponentName(this, DeviceAdminReceiver::class.java)
-        sharedPreferences = getSharedPreferences("app_locker_prefs", Context.MODE_PRIVATE)
 
         // Setup event channel for unlock requests
         EventChannel(flutterEngine.dartExecutor.binaryMessenger, EVENT_CHANNEL).setStreamHandler(object : EventChannel.StreamHandler {
@@ -116,13 +125,39 @@ class MainActivity: FlutterActivity() {
                     LogUtilManager.i("MainActivity", "🔐 STEP 12: Pending unlock event sent to Flutter")
                     pendingUnlockRequest = null
                 }
+
+                // Start receiving batched app-switch events from the AccessibilityService
+                AppSwitchEventBus.subscribe(appSwitchSubscriber)
             }
 
             override fun onCancel(arguments: Any?) {
+                AppSwitchEventBus.unsubscribe(appSwitchSubscriber)
                 eventSink = null
             }
         })
 
+        // Setup event channel that streams the installed apps listing in chunks
+        EventChannel(flutterEngine.dartExecutor.binaryMessenger, INSTALLED_APPS_CHANNEL).setStreamHandler(object : EventChannel.StreamHandler {
+            override fun onListen(arguments: Any?, events: EventChannel.EventSink?) {
+                appsEnumeration?.cancel()
+                appsEnumeration = InstalledAppsIndex.enumerateAsync(this@MainActivity, object : InstalledAppsIndex.ChunkSink {
+                    override fun onChunk(apps: List<Map<String, Any>>) {
+                        events?.success(mapOf("type" to "apps_chunk", "apps" to apps))
+                    }
+
+                    override fun onComplete(total: Int) {
+                        events?.success(mapOf("type" to "apps_done", "total" to total))
+                        events?.endOfStream()
+                    }
+                })
+            }
+
+            override fun onCancel(arguments: Any?) {
+                appsEnumeration?.cancel()
+                appsEnumeration = null
+            }
+        })
+
         // Setup platform methods channel
         MethodChannel(flutterEngine.dartExecutor.binaryMessenger, PLATFORM_CHANNEL).setMethodCallHandler { call, result ->
             when (call.method) {
@@ -145,6 +180,51 @@ class MainActivity: FlutterActivity() {
                     val packageNames = call.argument<List<String>>("packageNames") ?: emptyList()
                     setLockedApps(packageNames, result)
                 }
+                "lockApp" -> {
+                    val packageName = call.argument<String>("packageName") ?: ""
+                    lockApp(packageName, result)
+                }
+                "unlockApp" -> {
+                    val packageName = call.argument<String>("packageName") ?: ""
+                    unlockApp(packageName, result)
+                }
+                "getLockSnapshot" -> {
+                    val sinceVersion = call.argument<Number>("sinceVersion")?.toLong() ?: -1L
+                    getLockSnapshot(sinceVersion, result)
+                }
+                "getLockLatencyStats" -> {
+                    result.success(LockLatencyTracker.stats())
+                }
+                "resetLockLatencyStats" -> {
+                    LockLatencyTracker.reset()
+                    result.success(true)
+                }
+                "getAccessibilityEventStats" -> {
+                    result.success(AccessibilityService.getInstance()?.eventStats())
+                }
+                "isMultiWindowDetectionEnabled" -> {
+                    result.success(
+                        getSharedPreferences(LockPolicyStore.PREFS_NAME, MODE_PRIVATE)
+                            .getBoolean(AccessibilityService.KEY_MULTI_WINDOW_DETECTION, false)
+                    )
+                }
+                "setMultiWindowDetection" -> {
+                    val enabled = call.argument<Boolean>("enabled") ?: false
+                    setMultiWindowDetection(enabled, result)
+                }
+                "getForegroundEngine" -> {
+                    result.success(ForegroundDetection.selected(this))
+                }
+                "setForegroundEngine" -> {
+                    val engine = call.argument<String>("engine") ?: ""
+                    result.success(ForegroundDetection.select(this, engine))
+                }
+                "getForegroundEngineError" -> {
+                    result.success(ForegroundDetection.lastError)
+                }
+                "getUsageStatsEngineStats" -> {
+                    result.success(UsageStatsMonitorService.getInstance()?.stats())
+                }
                 "enableAccessibilityMonitoring" -> {
                     val enabled = call.argument<Boolean>("enabled") ?: false
                     enableAccessibilityMonitoring(enabled, result)
@@ -169,10 +249,19 @@ class MainActivity: FlutterActivity() {
                 "getInstalledApps" -> {
                     getInstalledApps(result)
                 }
+                "getAppInfo" -> {
+                    val packageName = call.argument<String>("packageName") ?: ""
+                    getAppInfo(packageName, result)
+                }
                 "getAppIcon" -> {
                     val packageName = call.argument<String>("packageName") ?: ""
                     getAppIcon(packageName, result)
                 }
+                "getAppIcons" -> {
+                    val packageNames = call.argument<List<String>>("packageNames") ?: emptyList()
+                    val sizePx = call.argument<Int>("sizePx") ?: AppIconCache.DEFAULT_SIZE_PX
+                    getAppIcons(packageNames, sizePx, result)
+                }
                 "requestAutoStart" -> {
                     requestAutoStart(result)
                 }
@@ -203,6 +292,17 @@ class MainActivity: FlutterActivity() {
                     val packageName = call.argument<String>("packageName") ?: ""
                     launchApp(packageName, result)
                 }
+                "hasPin" -> {
+                    result.success(PinStore.hasPin(this))
+                }
+                "setPin" -> {
+                    val pin = call.argument<String>("pin") ?: ""
+                    setPin(pin, result)
+                }
+                "verifyPin" -> {
+                    val pin = call.argument<String>("pin") ?: ""
+                    verifyPin(pin, result)
+                }
                 else -> {
                     result.notImplemented()
                 }
@@ -313,14 +413,10 @@ class MainActivity: FlutterActivity() {
 
     private fun setLockedApps(packageNames: List<String>, result: MethodChannel.Result) {
         try {
-            val editor = sharedPreferences.edit()
-            editor.putStringSet("locked_apps", packageNames.toSet())
-            editor.apply()
+            // Persist and publish a new policy snapshot for the AccessibilityService
+            LockPolicyStore.setLockedApps(this, packageNames)
             LogUtilManager.i("MainActivity", "Locked apps updated: ${packageNames.size} apps - ${packageNames}")
 
-            // Update the locked apps in the AccessibilityService
-            AccessibilityService.updateLockedApps(this, packageNames)
-
             result.success(true)
         } catch (e: Exception) {
             LogUtilManager.e("MainActivity", "Failed to set locked apps: ${e.message}")
@@ -328,11 +424,51 @@ class MainActivity: FlutterActivity() {
         }
     }
 
+    private fun lockApp(packageName: String, result: MethodChannel.Result) {
+        if (packageName.isEmpty()) {
+            result.error("INVALID_PACKAGE", "Package name must not be empty", null)
+            return
+        }
+        try {
+            result.success(LockPolicyStore.lockApp(this, packageName))
+        } catch (e: Exception) {
+            LogUtilManager.e("MainActivity", "Failed to lock app: ${e.message}")
+            result.error("LOCK_FAILED", e.message, null)
+        }
+    }
+
+    private fun unlockApp(packageName: String, result: MethodChannel.Result) {
+        if (packageName.isEmpty()) {
+            result.error("INVALID_PACKAGE", "Package name must not be empty", null)
+            return
+        }
+        try {
+            result.success(LockPolicyStore.unlockApp(this, packageName))
+        } catch (e: Exception) {
+            LogUtilManager.e("MainActivity", "Failed to unlock app: ${e.message}")
+            result.error("UNLOCK_FAILED", e.message, null)
+        }
+    }
+
+    private fun getLockSnapshot(sinceVersion: Long, result: MethodChannel.Result) {
+        try {
+            val version = LockPolicyStore.lockedAppsVersion(this)
+            if (version == sinceVersion) {
+                // Caller is current; skip marshalling the list
+                result.success(mapOf("version" to version))
+            } else {
+                val lockedApps = LockPolicyStore.current(this).lockedApps.toList()
+                result.success(mapOf("version" to version, "lockedApps" to lockedApps))
+            }
+        } catch (e: Exception) {
+            LogUtilManager.e("MainActivity", "Failed to read lock snapshot: ${e.message}")
+            result.error("SNAPSHOT_FAILED", e.message, null)
+        }
+    }
+
     private fun enableAccessibilityMonitoring(enabled: Boolean, result: MethodChannel.Result) {
         try {
-            val editor = sharedPreferences.edit()
-            editor.putBoolean("accessibility_monitoring_enabled", enabled)
-            editor.apply()
+            LockPolicyStore.setMonitoringEnabled(this, enabled)
             LogUtilManager.i("MainActivity", "Accessibility monitoring set to: $enabled")
             result.success(true)
         } catch (e: Exception) {
@@ -343,6 +479,21 @@ class MainActivity: FlutterActivity() {
 
 
 
+    private fun setMultiWindowDetection(enabled: Boolean, result: MethodChannel.Result) {
+        try {
+            getSharedPreferences(LockPolicyStore.PREFS_NAME, MODE_PRIVATE).edit()
+                .putBoolean(AccessibilityService.KEY_MULTI_WINDOW_DETECTION, enabled)
+                .apply()
+            // Re-subscribe now; otherwise the change takes effect when the service next connects
+            AccessibilityService.getInstance()?.applyServiceInfo()
+            LogUtilManager.i("MainActivity", "Multi-window detection set to: $enabled")
+            result.success(true)
+        } catch (e: Exception) {
+            LogUtilManager.e("MainActivity", "Failed to set multi-window detection: ${e.message}")
+            result.success(false)
+        }
+    }
+
     private fun killApp(packageName: String, result: MethodChannel.Result) {
         try {
             if (isDeviceAdminEnabled()) {
@@ -391,126 +542,34 @@ class MainActivity: FlutterActivity() {
 
     private fun getInstalledApps(result: MethodChannel.Result) {
         try {
-            val packageManager = packageManager
-            val appsList = mutableListOf<Map<String, Any>>()
-
-            // Method 1: Try getting all packages with different flags for MIUI compatibility
-            var packages = try {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                    packageManager.getInstalledPackages(PackageManager.PackageInfoFlags.of(PackageManager.GET_META_DATA.toLong()))
-                } else {
-                    @Suppress("DEPRECATION")
-                    packageManager.getInstalledPackages(PackageManager.GET_META_DATA)
-                }
-            } catch (e: Exception) {
-                // Fallback for MIUI devices
-                try {
-                    @Suppress("DEPRECATION")
-                    packageManager.getInstalledPackages(0)
-                } catch (e2: Exception) {
-                    emptyList()
-                }
+            // Served from the in-memory index; only the first call scans PackageManager
+            InstalledAppsIndex.getAllAsync(this) { appsList ->
+                result.success(appsList)
             }
-
-            // Method 2: If still empty, try getting applications directly
-            if (packages.isEmpty()) {
-                val applications = try {
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                        packageManager.getInstalledApplications(PackageManager.ApplicationInfoFlags.of(PackageManager.GET_META_DATA.toLong()))
-                    } else {
-                        @Suppress("DEPRECATION")
-                        packageManager.getInstalledApplications(PackageManager.GET_META_DATA)
-                    }
-                } catch (e: Exception) {
-                    @Suppress("DEPRECATION")
-                    packageManager.getInstalledApplications(0)
-                }
-
-                // Convert ApplicationInfo to PackageInfo-like structure
-                for (appInfo in applications) {
-                    try {
-                        val packageInfo = packageManager.getPackageInfo(appInfo.packageName, 0)
-                        packages = packages + packageInfo
-                    } catch (e: Exception) {
-                        // Skip if package info can't be retrieved
-                    }
-                }
-            }
-
-            // Process the packages
-            for (packageInfo in packages) {
-                try {
-                    val applicationInfo = packageInfo.applicationInfo
-                    if (applicationInfo != null && applicationInfo.enabled) {
-                        val appName = try {
-                            applicationInfo.loadLabel(packageManager).toString()
-                        } catch (e: Exception) {
-                            packageInfo.packageName // Fallback to package name
-                        }
-
-                        val isSystemApp = (applicationInfo.flags and android.content.pm.ApplicationInfo.FLAG_SYSTEM) != 0
-
-                        // Include app if it's either:
-                        // 1. A user app with launch intent
-                        // 2. A system app (regardless of launch intent for system apps tab)
-                        val hasLaunchIntent = packageManager.getLaunchIntentForPackage(packageInfo.packageName) != null
-
-                        if (hasLaunchIntent || isSystemApp) {
-                            val appMap = mapOf(
-                                "packageName" to packageInfo.packageName,
-                                "appName" to appName,
-                                "isSystemApp" to isSystemApp,
-                                "hasLaunchIntent" to hasLaunchIntent
-                            )
-                            appsList.add(appMap)
-                        }
-                    }
-                } catch (e: Exception) {
-                    // Log the error but continue processing other apps
-                    LogUtilManager.w("QVault", "Error processing app ${packageInfo.packageName}: ${e.message}")
-                }
-            }
-
-            // Sort apps by name for better UX
-            appsList.sortBy { (it["appName"] as String).lowercase() }
-
-            LogUtilManager.i("QVault", "Found ${appsList.size} apps (${appsList.count { !(it["isSystemApp"] as Boolean) }} user apps, ${appsList.count { it["isSystemApp"] as Boolean }} system apps)")
-
-            result.success(appsList)
         } catch (e: Exception) {
             LogUtilManager.e("QVault", "Error getting installed apps: ${e.message}")
             result.error("GET_APPS_ERROR", "Failed to get installed apps: ${e.message}", e.toString())
         }
     }
 
-    private fun getAppIcon(packageName: String, result: MethodChannel.Result) {
-        try {
-            val packageManager = packageManager
-            val applicationInfo = packageManager.getApplicationInfo(packageName, 0)
-            val drawable = applicationInfo.loadIcon(packageManager)
-
-            // Convert drawable to byte array
-            val bitmap = drawableToBitmap(drawable)
-            val stream = ByteArrayOutputStream()
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream)
-            val byteArray = stream.toByteArray()
+    private fun getAppInfo(packageName: String, result: MethodChannel.Result) {
+        InstalledAppsIndex.getAppAsync(this, packageName) { entry ->
+            result.success(entry?.toMap())
+        }
+    }
 
-            result.success(byteArray.toList())
-        } catch (e: Exception) {
-            result.success(null)
+    private fun getAppIcon(packageName: String, result: MethodChannel.Result) {
+        // Pre-encoded bytes from the icon cache; a ByteArray reaches Dart as a Uint8List
+        AppIconCache.getAsync(this, packageName, AppIconCache.DEFAULT_SIZE_PX) { icon ->
+            result.success(icon)
         }
     }
 
-    private fun drawableToBitmap(drawable: Drawable): Bitmap {
-        val bitmap = Bitmap.createBitmap(
-            drawable.intrinsicWidth.coerceAtLeast(1),
-            drawable.intrinsicHeight.coerceAtLeast(1),
-            Bitmap.Config.ARGB_8888
-        )
-        val canvas = Canvas(bitmap)
-        drawable.setBounds(0, 0, canvas.width, canvas.height)
-        drawable.draw(canvas)
-        return bitmap
+    private fun getAppIcons(packageNames: List<String>, sizePx: Int, result: MethodChannel.Result) {
+        // One round trip for the whole batch; icons decode in parallel on the cache's pool
+        AppIconCache.getAllAsync(this, packageNames, sizePx.coerceIn(16, 512)) { icons ->
+            result.success(icons)
+        }
     }
 
     // New utility methods
@@ -568,11 +627,7 @@ class MainActivity: FlutterActivity() {
 
     private fun temporarilyUnlockApp(packageName: String, result: MethodChannel.Result) {
         try {
-            val editor = sharedPreferences.edit()
-            val temporarilyUnlockedApps = sharedPreferences.getStringSet("temporarily_unlocked_apps", setOf())?.toMutableSet() ?: mutableSetOf()
-            temporarilyUnlockedApps.add(packageName)
-            editor.putStringSet("temporarily_unlocked_apps", temporarilyUnlockedApps)
-            editor.apply()
+            LockPolicyStore.grantTemporaryUnlock(this, packageName)
             LogUtilManager.i("MainActivity", "Temporarily unlocked app: $packageName")
             result.success(true)
         } catch (e: Exception) {
@@ -583,11 +638,7 @@ class MainActivity: FlutterActivity() {
 
     private fun reEnableAppInterception(packageName: String, result: MethodChannel.Result) {
         try {
-            val editor = sharedPreferences.edit()
-            val temporarilyUnlockedApps = sharedPreferences.getStringSet("temporarily_unlocked_apps", setOf())?.toMutableSet() ?: mutableSetOf()
-            temporarilyUnlockedApps.remove(packageName)
-            editor.putStringSet("temporarily_unlocked_apps", temporarilyUnlockedApps)
-            editor.apply()
+            LockPolicyStore.revokeTemporaryUnlock(this, packageName)
             LogUtilManager.i("MainActivity", "Re-enabled interception for app: $packageName")
             result.success(true)
         } catch (e: Exception) {
@@ -616,4 +667,24 @@ class MainActivity: FlutterActivity() {
         }
     }
 
+    private fun setPin(pin: String, result: MethodChannel.Result) {
+        if (pin.isEmpty()) {
+            result.error("INVALID_PIN", "PIN must not be empty", null)
+            return
+        }
+        PinStore.setPinAsync(this, pin) { saved ->
+            result.success(saved)
+        }
+    }
+
+    private fun verifyPin(pin: String, result: MethodChannel.Result) {
+        if (pin.isEmpty()) {
+            result.success(false)
+            return
+        }
+        PinStore.verifyAsync(this, pin) { verification ->
+            result.success(verification == PinStore.Result.MATCH)
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,178 @@
+package com.example.newapplocker
+
+import android.content.Context
+import android.content.Intent
+import android.view.View
+import android.widget.Button
+import android.widget.TextView
+import com.example.newapplocker.utils.LogUtilManager
+
+/**
+ * Drives the PIN pad in `activity_pin_unlock`, independent of the window that hosts it.
+ *
+ * [PinUnlockActivity] and the service-owned [LockOverlayPresenter] both inflate the same
+ * layout and hand the root view to a controller. Views are looked up and listeners bound once;
+ * [bind] only resets state, so a prewarmed pad can be re-used for every lock.
+ */
+class PinPadController(
+    private val context: Context,
+    root: View,
+    private val listener: Listener
+) {
+
+    interface Listener {
+        fun onPinAccepted(packageName: String)
+    }
+
+    companion object {
+        private const val TAG = "PinPadController"
+        private const val PIN_LENGTH = 4
+
+        /**
+         * Grants a temporary unlock for [packageName] and launches it. Returns false if the
+         * package has no launch intent.
+         */
+        fun unlockAndLaunch(context: Context, packageName: String): Boolean {
+            // Add app to temporarily unlocked list BEFORE launching
+            LockPolicyStore.grantTemporaryUnlock(context, packageName)
+
+            val launchIntent = context.packageManager.getLaunchIntentForPackage(packageName) ?: return false
+            launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
+            launchIntent.addFlags(Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED)
+            context.startActivity(launchIntent)
+            return true
+        }
+    }
+
+    private val pinDots: Array<View> = arrayOf(
+        root.findViewById(R.id.pin_dot_1),
+        root.findViewById(R.id.pin_dot_2),
+        root.findViewById(R.id.pin_dot_3),
+        root.findViewById(R.id.pin_dot_4)
+    )
+    private val appNameTextView: TextView = root.findViewById(R.id.app_name)
+    private val errorMessage: TextView = root.findViewById(R.id.error_message)
+
+    private var enteredPin = ""
+    private var lockedPackage: String? = null
+
+    // True while the KDF runs; input is ignored until the result arrives
+    private var verifying = false
+
+    init {
+        val numberButtonIds = intArrayOf(
+            R.id.btn_0, R.id.btn_1, R.id.btn_2, R.id.btn_3, R.id.btn_4,
+            R.id.btn_5, R.id.btn_6, R.id.btn_7, R.id.btn_8, R.id.btn_9
+        )
+
+        // Set click listeners for number buttons
+        numberButtonIds.forEachIndexed { index, id ->
+            root.findViewById<Button>(id).setOnClickListener {
+                onNumberClick(index.toString())
+            }
+        }
+
+        // Delete button
+        root.findViewById<Button>(R.id.btn_delete).setOnClickListener {
+            onDeleteClick()
+        }
+    }
+
+    /** Resets the pad for a new lock of [packageName]. */
+    fun bind(packageName: String, appName: String) {
+        lockedPackage = packageName
+        appNameTextView.text = appName
+        verifying = false
+        clearPin()
+        hideError()
+    }
+
+    /** Shows an error on the pad, e.g. when the unlocked app cannot be launched. */
+    fun showError(message: String) {
+        errorMessage.text = message
+        errorMessage.visibility = View.VISIBLE
+    }
+
+    private fun onNumberClick(number: String) {
+        if (!verifying && enteredPin.length < PIN_LENGTH) {
+            enteredPin += number
+            updatePinDots()
+            hideError()
+
+            LogUtilManager.d(TAG) { "🔐 NATIVE PIN: Pin length now: ${enteredPin.length}" }
+
+            if (enteredPin.length == PIN_LENGTH) {
+                verifyPin()
+            }
+        }
+    }
+
+    private fun onDeleteClick() {
+        if (!verifying && enteredPin.isNotEmpty()) {
+            enteredPin = enteredPin.substring(0, enteredPin.length - 1)
+            updatePinDots()
+            hideError()
+
+            LogUtilManager.d(TAG) { "🔐 NATIVE PIN: Pin deleted, length now: ${enteredPin.length}" }
+        }
+    }
+
+    private fun updatePinDots() {
+        pinDots.forEachIndexed { index, dot ->
+            dot.isSelected = index < enteredPin.length
+        }
+    }
+
+    private fun verifyPin() {
+        LogUtilManager.d(TAG) { "🔐 NATIVE PIN: Verifying PIN..." }
+
+        val packageName = lockedPackage ?: return
+        verifying = true
+        PinStore.verifyAsync(context, enteredPin) { result ->
+            // The pad may have been re-bound to another lock while the KDF ran
+            if (!verifying || lockedPackage != packageName) return@verifyAsync
+            verifying = false
+
+            when (result) {
+                PinStore.Result.MATCH -> {
+                    LogUtilManager.d(TAG) { "🔐 NATIVE PIN: PIN CORRECT! Unlocking app $packageName" }
+                    clearPin()
+                    listener.onPinAccepted(packageName)
+                }
+                PinStore.Result.NO_PIN -> {
+                    LogUtilManager.e(TAG, "🔐 NATIVE PIN ERROR: No stored PIN found")
+                    clearPin()
+                    showError("No PIN set")
+                }
+                PinStore.Result.MISMATCH -> {
+                    LogUtilManager.d(TAG) { "🔐 NATIVE PIN: PIN WRONG! Showing error" }
+                    showError("Wrong PIN. Try again.")
+                    clearPin()
+                    showErrorDots()
+                }
+            }
+        }
+    }
+
+    private fun clearPin() {
+        enteredPin = ""
+        updatePinDots()
+    }
+
+    private fun hideError() {
+        errorMessage.visibility = View.GONE
+    }
+
+    private fun showErrorDots() {
+        pinDots.forEach { dot ->
+            dot.isPressed = true
+        }
+
+        // Reset dots after 1 second
+        pinDots[0].postDelayed({
+            pinDots.forEach { dot ->
+                dot.isPressed = false
+            }
+        }, 1000)
+    }
+}
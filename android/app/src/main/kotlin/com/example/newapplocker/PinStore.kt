@@ -0,0 +1,140 @@
+package com.example.newapplocker
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import com.example.newapplocker.core.PinKdf
+import com.example.newapplocker.core.PinSessionCache
+import com.example.newapplocker.core.PinVerifier
+import com.example.newapplocker.utils.LogUtilManager
+import java.security.SecureRandom
+import java.util.concurrent.Executors
+
+/**
+ * Owns the app PIN: setting it, verifying it and migrating it from the legacy format.
+ *
+ * The PIN record lives in FlutterSharedPreferences under `flutter.app_pin`, where Flutter has
+ * always written it, so existence checks keep working. New records use [PinKdf] with an
+ * iteration count calibrated once per device to [TARGET_VERIFY_MS]. A legacy unsalted SHA-256
+ * record is re-hashed on the first successful verification. Derivations run on a background
+ * thread and results are delivered on the main thread.
+ */
+object PinStore {
+    private const val TAG = "PinStore"
+    private const val FLUTTER_PREFS_NAME = "FlutterSharedPreferences"
+    private const val KEY_PIN = "flutter.app_pin"
+    private const val KEY_KDF_ITERATIONS = "pin_kdf_iterations"
+    private const val KEY_SESSION_GRACE_MS = "pin_session_grace_ms"
+    private const val TARGET_VERIFY_MS = 80L
+    private const val DEFAULT_SESSION_GRACE_MS = 30_000L
+
+    // Older builds were seen writing the PIN under either of these keys
+    private val LEGACY_PIN_KEYS = arrayOf(KEY_PIN, "app_pin", "flutter.prefs.app_pin")
+
+    enum class Result { MATCH, MISMATCH, NO_PIN }
+
+    private val executor = Executors.newSingleThreadExecutor { r -> Thread(r, "pin-kdf") }
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private val random = SecureRandom()
+    private val legacyVerifier = PinVerifier()
+    private val sessionCache = PinSessionCache(DEFAULT_SESSION_GRACE_MS)
+
+    fun hasPin(context: Context): Boolean = storedRecord(flutterPrefs(context)) != null
+
+    /** Stores a new PIN record and ends any verified session. */
+    fun setPinAsync(context: Context, pin: String, callback: (Boolean) -> Unit) {
+        val appContext = context.applicationContext
+        executor.execute {
+            val saved = try {
+                sessionCache.clear()
+                val record = PinKdf.create(pin, iterations(appContext), random)
+                writeRecord(appContext, record)
+            } catch (e: Exception) {
+                LogUtilManager.e(TAG, "Failed to set PIN: ${e.message}")
+                false
+            }
+            mainHandler.post { callback(saved) }
+        }
+    }
+
+    fun verifyAsync(context: Context, pin: String, callback: (Result) -> Unit) {
+        val appContext = context.applicationContext
+        executor.execute {
+            val result = try {
+                verify(appContext, pin)
+            } catch (e: Exception) {
+                LogUtilManager.e(TAG, "Failed to verify PIN: ${e.message}")
+                Result.MISMATCH
+            }
+            mainHandler.post { callback(result) }
+        }
+    }
+
+    /** Blocking; call from a background thread. */
+    fun verify(context: Context, pin: String): Result {
+        val stored = storedRecord(flutterPrefs(context)) ?: return Result.NO_PIN
+        val now = SystemClock.elapsedRealtime()
+
+        sessionCache.graceMs = context.getSharedPreferences(LockPolicyStore.PREFS_NAME, Context.MODE_PRIVATE)
+            .getLong(KEY_SESSION_GRACE_MS, DEFAULT_SESSION_GRACE_MS)
+        if (sessionCache.matches(pin, now)) {
+            LogUtilManager.d(TAG) { "PIN accepted from verified session" }
+            return Result.MATCH
+        }
+
+        val record = PinKdf.parse(stored)
+        val matches = when {
+            record != null -> PinKdf.verify(pin, record)
+            PinKdf.isLegacySha256(stored) -> {
+                val legacyMatch = legacyVerifier.matches(pin, stored)
+                if (legacyMatch) {
+                    // Re-hash into the salted format now that the PIN is known
+                    val migrated = writeRecord(context, PinKdf.create(pin, iterations(context), random))
+                    LogUtilManager.i(TAG, "Migrated legacy PIN record: $migrated")
+                }
+                legacyMatch
+            }
+            else -> {
+                LogUtilManager.e(TAG, "Unrecognised PIN record format")
+                false
+            }
+        }
+
+        if (!matches) return Result.MISMATCH
+        sessionCache.remember(pin, SystemClock.elapsedRealtime())
+        return Result.MATCH
+    }
+
+    private fun iterations(context: Context): Int {
+        val prefs = context.getSharedPreferences(LockPolicyStore.PREFS_NAME, Context.MODE_PRIVATE)
+        val stored = prefs.getInt(KEY_KDF_ITERATIONS, 0)
+        if (stored >= PinKdf.MIN_ITERATIONS) return stored
+
+        val calibrated = PinKdf.calibrate(TARGET_VERIFY_MS)
+        prefs.edit().putInt(KEY_KDF_ITERATIONS, calibrated).apply()
+        LogUtilManager.i(TAG, "Calibrated PIN KDF to $calibrated iterations")
+        return calibrated
+    }
+
+    private fun storedRecord(prefs: SharedPreferences): String? {
+        for (key in LEGACY_PIN_KEYS) {
+            prefs.getString(key, null)?.let { return it }
+        }
+        return null
+    }
+
+    private fun writeRecord(context: Context, record: String): Boolean {
+        // Runs on the KDF thread, so a synchronous commit does not block the UI
+        val editor = flutterPrefs(context).edit()
+        for (key in LEGACY_PIN_KEYS) {
+            if (key != KEY_PIN) editor.remove(key)
+        }
+        return editor.putString(KEY_PIN, record).commit()
+    }
+
+    private fun flutterPrefs(context: Context): SharedPreferences {
+        return context.getSharedPreferences(FLUTTER_PREFS_NAME, Context.MODE_PRIVATE)
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.newapplocker
+
+import android.app.usage.UsageEvents
+import android.app.usage.UsageStatsManager
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.os.Debug
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.PowerManager
+import android.os.Process
+import android.os.SystemClock
+import com.example.newapplocker.core.AdaptivePollInterval
+import com.example.newapplocker.core.ForegroundDetector
+import com.example.newapplocker.core.LatencyHistogram
+import com.example.newapplocker.utils.LogUtilManager
+
+/**
+ * [ForegroundDetector] that polls `UsageStatsManager.queryEvents` for activity resumes.
+ *
+ * Each poll reads only the events after the newest one it has already seen, keeps the last
+ * resume and reports it if the foreground app changed. Polls are spaced by an
+ * [AdaptivePollInterval]: fast right after the screen comes on or the app changes, backing off
+ * while nothing happens, and none at all while the screen is off. Polls run on a background
+ * thread of their own and the listener is called there.
+ *
+ * Every poll's wall time and thread CPU time are accounted, so [stats] shows what this engine
+ * actually costs on a device.
+ */
+class UsageStatsForegroundDetector(context: Context) : ForegroundDetector {
+
+    companion object {
+        private const val TAG = "UsageStatsDetector"
+        // How far back the first poll looks for the app that is already in the foreground
+        private const val START_LOOKBACK_MS = 60_000L
+    }
+
+    private val context = context.applicationContext
+    private val usageStatsManager = context.getSystemService(Context.USAGE_STATS_SERVICE) as UsageStatsManager
+    private val powerManager = context.getSystemService(Context.POWER_SERVICE) as PowerManager
+
+    private var pollThread: HandlerThread? = null
+    private var pollHandler: Handler? = null
+
+    @Volatile
+    private var listener: ForegroundDetector.Listener? = null
+
+    /** Package of the last resume seen, or null before the first one. */
+    @Volatile
+    var foregroundPackage: String? = null
+        private set
+
+    // Poll thread
+    private val interval = AdaptivePollInterval(
+        AdaptivePollInterval.DEFAULT_FAST_MS,
+        AdaptivePollInterval.DEFAULT_MAX_MS,
+        AdaptivePollInterval.DEFAULT_FAST_PERIOD_MS
+    )
+    private val event = UsageEvents.Event()
+    private var cursorMs = 0L
+    private var screenOn = false
+    private val pollTask = Runnable { poll() }
+
+    // Poll thread writes, any thread reads; see stats()
+    private val pollTimes = LatencyHistogram()
+    @Volatile private var statsSinceUptimeMs = 0L
+    @Volatile private var polls = 0L
+    @Volatile private var eventsRead = 0L
+    @Volatile private var foregroundChanges = 0L
+    @Volatile private var cpuNanos = 0L
+
+    private val screenReceiver = object : BroadcastReceiver() {
+        override fun onReceive(context: Context, intent: Intent) {
+            when (intent.action) {
+                Intent.ACTION_SCREEN_ON, Intent.ACTION_USER_PRESENT -> onScreenOn()
+                Intent.ACTION_SCREEN_OFF -> onScreenOff()
+            }
+        }
+    }
+
+    override val isRunning: Boolean
+        get() = pollThread != null
+
+    @Synchronized
+    override fun start(listener: ForegroundDetector.Listener) {
+        this.listener = listener
+        if (pollThread != null) return
+
+        val thread = HandlerThread("usage-stats-poll", Process.THREAD_PRIORITY_BACKGROUND).also { it.start() }
+        val handler = Handler(thread.looper)
+        pollThread = thread
+        pollHandler = handler
+
+        resetStats()
+        handler.post {
+            cursorMs = System.currentTimeMillis() - START_LOOKBACK_MS
+            foregroundPackage = null
+            screenOn = false
+        }
+        val filter = IntentFilter().apply {
+            addAction(Intent.ACTION_SCREEN_ON)
+            addAction(Intent.ACTION_SCREEN_OFF)
+            addAction(Intent.ACTION_USER_PRESENT)
+        }
+        context.registerReceiver(screenReceiver, filter, null, handler)
+        if (powerManager.isInteractive) {
+            handler.post { onScreenOn() }
+        }
+        LogUtilManager.d(TAG) { "Usage stats detector started" }
+    }
+
+    @Synchronized
+    override fun stop() {
+        val thread = pollThread ?: return
+        listener = null
+        try {
+            context.unregisterReceiver(screenReceiver)
+        } catch (e: IllegalArgumentException) {
+            // Not registered
+        }
+        pollHandler?.removeCallbacksAndMessages(null)
+        thread.quitSafely()
+        pollThread = null
+        pollHandler = null
+        LogUtilManager.d(TAG) { "Usage stats detector stopped" }
+    }
+
+    /** Polling cost since the detector started; safe to call from any thread. */
+    fun stats(): Map<String, Any> {
+        val elapsedMs = (SystemClock.uptimeMillis() - statsSinceUptimeMs).coerceAtLeast(1L)
+        val cpuMs = cpuNanos / 1_000_000.0
+        val pollSummary = pollTimes.summary()
+        return mapOf(
+            "elapsedMs" to elapsedMs,
+            "polls" to polls,
+            "eventsRead" to eventsRead,
+            "foregroundChanges" to foregroundChanges,
+            "cpuMs" to cpuMs,
+            "cpuMsPerMinute" to cpuMs * 60_000.0 / elapsedMs,
+            "pollP50Ms" to pollSummary.p50Us / 1000.0,
+            "pollP99Ms" to pollSummary.p99Us / 1000.0
+        )
+    }
+
+    private fun resetStats() {
+        pollTimes.reset()
+        statsSinceUptimeMs = SystemClock.uptimeMillis()
+        polls = 0L
+        eventsRead = 0L
+        foregroundChanges = 0L
+        cpuNanos = 0L
+    }
+
+    // Poll thread
+    private fun onScreenOn() {
+        if (screenOn) return
+        screenOn = true
+        interval.onActivity(SystemClock.uptimeMillis())
+        pollHandler?.removeCallbacks(pollTask)
+        poll()
+    }
+
+    // Poll thread
+    private fun onScreenOff() {
+        screenOn = false
+        pollHandler?.removeCallbacks(pollTask)
+    }
+
+    // Poll thread
+    private fun poll() {
+        val handler = pollHandler ?: return
+        val startNanos = System.nanoTime()
+        val startCpuNanos = Debug.threadCpuTimeNanos()
+
+        var resumedPackage: String? = null
+        var resumedClass: String? = null
+        var resumedAtMs = 0L
+        var read = 0L
+        val nowMs = System.currentTimeMillis()
+        try {
+            val events = usageStatsManager.queryEvents(cursorMs, nowMs)
+            while (events.getNextEvent(event)) {
+                read++
+                val timestamp = event.timeStamp
+                if (timestamp >= cursorMs) cursorMs = timestamp + 1
+                // ACTIVITY_RESUMED on Android 10+, same value
+                @Suppress("DEPRECATION")
+                if (event.eventType == UsageEvents.Event.MOVE_TO_FOREGROUND) {
+                    resumedPackage = event.packageName
+                    resumedClass = event.className
+                    resumedAtMs = timestamp
+                }
+            }
+        } catch (e: Exception) {
+            LogUtilManager.e(TAG, "Failed to query usage events: ${e.message}")
+        }
+
+        val uptimeMs = SystemClock.uptimeMillis()
+        if (resumedPackage != null && resumedPackage != foregroundPackage) {
+            foregroundPackage = resumedPackage
+            foregroundChanges++
+            interval.onActivity(uptimeMs)
+            // Date the switch back to the event so lock latency includes the polling delay
+            val ageNanos = (nowMs - resumedAtMs).coerceAtLeast(0L) * 1_000_000L
+            listener?.onForeground(resumedPackage, resumedClass ?: "", true, startNanos - ageNanos)
+        }
+
+        polls++
+        eventsRead += read
+        pollTimes.record((System.nanoTime() - startNanos) / 1_000L)
+        if (startCpuNanos >= 0L) {
+            cpuNanos += Debug.threadCpuTimeNanos() - startCpuNanos
+        }
+
+        if (screenOn) {
+            handler.postDelayed(pollTask, interval.next(uptimeMs))
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.newapplocker
+
+import android.app.Notification
+import android.app.NotificationChannel
+import android.app.NotificationManager
+import android.app.Service
+import android.content.Intent
+import android.content.pm.ServiceInfo
+import android.os.Build
+import android.os.Handler
+import android.os.IBinder
+import android.os.Looper
+import com.example.newapplocker.core.ForegroundDetector
+import com.example.newapplocker.core.LockDecider
+import com.example.newapplocker.core.PackageIdTable
+import com.example.newapplocker.utils.LockUtilManager
+import com.example.newapplocker.utils.LogUtilManager
+
+/**
+ * Foreground service that locks apps from usage events when [ForegroundDetection.USAGE_STATS]
+ * is selected.
+ *
+ * It owns a [UsageStatsForegroundDetector] and runs every switch it reports through a
+ * [LockDecisionPipeline] on the detector's poll thread. Without an accessibility service there
+ * is no way to send an app home, so a lock starts [PinUnlockActivity] straight over the locked
+ * app, which holding SYSTEM_ALERT_WINDOW allows from the background. The pad ignores Back, so
+ * the app stays covered until the PIN is entered or the user goes home.
+ *
+ * It runs as a `specialUse` foreground service, the only type an app locker can hold. If it
+ * cannot enter the foreground or lacks usage access, it hands back to the accessibility engine
+ * through [ForegroundDetection.onUsageStatsFailed].
+ */
+class UsageStatsMonitorService : Service() {
+
+    companion object {
+        private const val TAG = "UsageStatsMonitor"
+        private const val CHANNEL_ID = "app_locker_service"
+        private const val NOTIFICATION_ID = 889
+        @Volatile
+        private var instance: UsageStatsMonitorService? = null
+
+        fun getInstance(): UsageStatsMonitorService? = instance
+
+        fun isRunning(): Boolean = instance != null
+    }
+
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private val packageIds = PackageIdTable.SHARED
+    private lateinit var detector: UsageStatsForegroundDetector
+    private lateinit var pipeline: LockDecisionPipeline
+
+    // Poll thread
+    private val foregroundListener = ForegroundDetector.Listener { eventPackage, className, _, detectedNanos ->
+        val packageId = packageIds.intern(eventPackage)
+        val packageName = packageIds.nameOf(packageId)
+        val classNameForBus = if (AppSwitchEventBus.hasSubscriber()) className.toString() else null
+        if (pipeline.onForeground(packageId, packageName, classNameForBus, detectedNanos) == LockDecider.Outcome.LOCK) {
+            mainHandler.postAtFrontOfQueue { showLockScreen(packageName) }
+        }
+    }
+
+    override fun onCreate() {
+        super.onCreate()
+        instance = this
+        pipeline = LockDecisionPipeline(this)
+        detector = UsageStatsForegroundDetector(this)
+        LogUtilManager.d(TAG) { "Usage stats monitor created" }
+    }
+
+    override fun onStartCommand(intent: Intent?, flags: Int, startId: Int): Int {
+        if (!startInForeground()) {
+            stopSelf()
+            return START_NOT_STICKY
+        }
+        if (!LockUtilManager.isUsageStatsPermissionGranted(this)) {
+            stopSelf()
+            ForegroundDetection.onUsageStatsFailed(this, "Usage access is not granted")
+            return START_NOT_STICKY
+        }
+        if (!detector.isRunning) {
+            pipeline.refreshHomePackages()
+            pipeline.reset()
+            detector.start(foregroundListener)
+        }
+        return START_STICKY
+    }
+
+    override fun onBind(intent: Intent?): IBinder? = null
+
+    /** Polling cost of the running detector, see [UsageStatsForegroundDetector.stats]. */
+    fun stats(): Map<String, Any> = detector.stats()
+
+    // Main thread
+    private fun showLockScreen(packageName: String) {
+        if (instance !== this) return
+        // The poll that found the switch may already be out of date
+        if (detector.foregroundPackage != packageName) {
+            LogUtilManager.d(TAG) { "Dropped stale lock for $packageName" }
+            return
+        }
+        try {
+            val intent = Intent(this, PinUnlockActivity::class.java)
+            intent.putExtra("package_name", packageName)
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
+            intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP)
+            intent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP)
+            intent.addFlags(Intent.FLAG_ACTIVITY_NO_ANIMATION)
+            startActivity(intent)
+        } catch (e: Exception) {
+            LogUtilManager.e(TAG, "Failed to start unlock activity: ${e.message}")
+        }
+    }
+
+    private fun startInForeground(): Boolean {
+        return try {
+            val notification = buildNotification()
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+                startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_SPECIAL_USE)
+            } else {
+                startForeground(NOTIFICATION_ID, notification)
+            }
+            true
+        } catch (e: Exception) {
+            ForegroundDetection.onUsageStatsFailed(this, "Could not enter the foreground: ${e.message}")
+            false
+        }
+    }
+
+    private fun buildNotification(): Notification {
+        val builder = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            val channel = NotificationChannel(
+                CHANNEL_ID,
+                getString(R.string.notification_channel_name),
+                NotificationManager.IMPORTANCE_LOW
+            )
+            channel.description = getString(R.string.notification_channel_description)
+            getSystemService(NotificationManager::class.java).createNotificationChannel(channel)
+            Notification.Builder(this, CHANNEL_ID)
+        } else {
+            @Suppress("DEPRECATION")
+            Notification.Builder(this)
+        }
+        return builder
+            .setSmallIcon(R.mipmap.ic_launcher)
+            .setContentTitle(getString(R.string.app_name))
+            .setContentText(getString(R.string.notification_channel_description))
+            .setOngoing(true)
+            .build()
+    }
+
+    override fun onDestroy() {
+        detector.stop()
+        mainHandler.removeCallbacksAndMessages(null)
+        instance = null
+        LogUtilManager.d(TAG) { "Usage stats monitor destroyed" }
+        super.onDestroy()
+    }
+}
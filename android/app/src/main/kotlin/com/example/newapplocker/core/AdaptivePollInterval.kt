@@ -0,0 +1,40 @@
+package com.example.newapplocker.core
+
+/**
+ * Poll interval for a detector that has to ask for changes instead of being told.
+ *
+ * Right after the screen comes on or the foreground app changes, the user is likely to switch
+ * again, so polls run every [fastMs] for [fastPeriodMs]. After that every poll that finds
+ * nothing doubles the interval, up to [maxMs]. The cost of an idle screen is therefore bounded
+ * by one poll per [maxMs], and a lock is never detected later than [maxMs] after the switch.
+ *
+ * Not thread-safe: confine an instance to the polling thread.
+ */
+class AdaptivePollInterval(
+    private val fastMs: Long,
+    private val maxMs: Long,
+    private val fastPeriodMs: Long
+) {
+
+    private var fastUntilMs = 0L
+    private var currentMs = fastMs
+
+    /** The screen came on or the foreground changed at [nowMs]: poll fast again. */
+    fun onActivity(nowMs: Long) {
+        fastUntilMs = nowMs + fastPeriodMs
+        currentMs = fastMs
+    }
+
+    /** Delay before the next poll, for a poll that just finished at [nowMs]. */
+    fun next(nowMs: Long): Long {
+        if (nowMs < fastUntilMs) return fastMs
+        currentMs = (currentMs * 2).coerceAtMost(maxMs)
+        return currentMs
+    }
+
+    companion object {
+        const val DEFAULT_FAST_MS = 150L
+        const val DEFAULT_MAX_MS = 2_000L
+        const val DEFAULT_FAST_PERIOD_MS = 5_000L
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.newapplocker.core
+
+/**
+ * Case-insensitive ordering of app listings by display name.
+ *
+ * Compares the names in place instead of lower-casing both sides on every comparison, which
+ * allocated two strings per comparison when sorting with `sortedBy { it.lowercase() }`.
+ */
+object AppNameOrder {
+
+    fun <T> byName(name: (T) -> String): Comparator<T> =
+        Comparator { a, b -> String.CASE_INSENSITIVE_ORDER.compare(name(a), name(b)) }
+}
@@ -0,0 +1,79 @@
+package com.example.newapplocker.core
+
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Bounded single-producer/single-consumer ring of app-switch events.
+ *
+ * The producer is the accessibility event path and the consumer is whoever flushes events to
+ * Flutter. Neither side takes a lock: the producer publishes a slot by advancing [tail] with a
+ * release store and the consumer frees slots by advancing [head] the same way. When the ring
+ * is full new events are dropped and counted rather than blocking the producer.
+ */
+class AppSwitchRingBuffer(capacity: Int) {
+
+    fun interface Sink {
+        fun onEvent(packageName: String, className: String, timestampMs: Long)
+    }
+
+    private val capacity: Int
+    private val mask: Int
+    private val packageNames: Array<String?>
+    private val classNames: Array<String?>
+    private val timestamps: LongArray
+
+    private val head = AtomicLong()
+    private val tail = AtomicLong()
+    private val dropped = AtomicLong()
+
+    init {
+        require(capacity > 0) { "capacity must be positive" }
+        this.capacity = Integer.highestOneBit(capacity - 1).shl(1).coerceAtLeast(1)
+        mask = this.capacity - 1
+        packageNames = arrayOfNulls(this.capacity)
+        classNames = arrayOfNulls(this.capacity)
+        timestamps = LongArray(this.capacity)
+    }
+
+    /** Producer side. Returns false (and counts a drop) if the ring is full. */
+    fun offer(packageName: String, className: String, timestampMs: Long): Boolean {
+        val t = tail.get()
+        if (t - head.get() >= capacity) {
+            dropped.incrementAndGet()
+            return false
+        }
+        val index = (t and mask.toLong()).toInt()
+        packageNames[index] = packageName
+        classNames[index] = className
+        timestamps[index] = timestampMs
+        tail.lazySet(t + 1)
+        return true
+    }
+
+    /** Consumer side. Hands every queued event to [sink] in order and returns how many. */
+    fun drain(sink: Sink): Int {
+        var h = head.get()
+        val t = tail.get()
+        val count = (t - h).toInt()
+        while (h < t) {
+            val index = (h and mask.toLong()).toInt()
+            val packageName = packageNames[index]!!
+            val className = classNames[index]!!
+            packageNames[index] = null
+            classNames[index] = null
+            sink.onEvent(packageName, className, timestamps[index])
+            h++
+        }
+        head.lazySet(h)
+        return count
+    }
+
+    /** Consumer side. Discards everything queued so far. */
+    fun clear() {
+        drain { _, _, _ -> }
+    }
+
+    fun isEmpty(): Boolean = tail.get() == head.get()
+
+    fun droppedCount(): Long = dropped.get()
+}
@@ -0,0 +1,30 @@
+package com.example.newapplocker.core
+
+/**
+ * A source of foreground-app changes that the lock logic can run on.
+ *
+ * Detectors differ in how they learn about a switch: the accessibility service is pushed a
+ * window event, while the usage-stats engine polls `UsageStatsManager`. Both hand the same
+ * three facts to a [Listener], so everything from the lock decision on does not care which one
+ * is in use. Only one detector drives locking at a time.
+ */
+interface ForegroundDetector {
+
+    fun interface Listener {
+        /**
+         * [packageName] showed a window of [className]. [active] is false for a window that is
+         * visible but not focused, e.g. the other half of a split screen. [detectedNanos] is
+         * when the switch happened on the [System.nanoTime] clock, which for a polling detector
+         * lies before the call. Called on the detector's own thread.
+         */
+        fun onForeground(packageName: CharSequence, className: CharSequence, active: Boolean, detectedNanos: Long)
+    }
+
+    val isRunning: Boolean
+
+    /** Starts reporting to [listener]. Calling it again while running replaces the listener. */
+    fun start(listener: Listener)
+
+    /** Stops reporting. No listener call starts after this returns. */
+    fun stop()
+}
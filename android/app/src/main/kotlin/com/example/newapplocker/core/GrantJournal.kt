@@ -0,0 +1,105 @@
+package com.example.newapplocker.core
+
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+
+/**
+ * Append-only journal that persists [TemporaryUnlockGrants].
+ *
+ * Every change appends one line, `+ <expiresAtMs> <package>` for a grant or `- <package>` for
+ * a removal, so a write costs one short append instead of rewriting the whole set. Replaying
+ * the file rebuilds the table. A record only counts once its newline is on disk: a crash
+ * mid-append leaves an unterminated tail such as `- com.whats`, which replay ignores and cuts
+ * off the file so the next append starts on a fresh line. Once the journal holds many more
+ * records than there are live grants it is compacted into a fresh file and renamed over the
+ * old one.
+ */
+class GrantJournal(private val file: File) {
+
+    private var records = 0
+
+    fun exists(): Boolean = file.exists()
+
+    /** Rebuilds [grants] from the journal. Returns the number of records read. */
+    fun replay(grants: TemporaryUnlockGrants): Int {
+        records = 0
+        if (!file.exists()) return 0
+
+        val bytes = file.readBytes()
+        val end = bytes.lastIndexOf('\n'.code.toByte()) + 1
+        if (end < bytes.size) {
+            truncate(end.toLong())
+        }
+
+        String(bytes, 0, end, Charsets.UTF_8).lineSequence().forEach { line ->
+            val parts = line.split(' ')
+            when {
+                parts.size == 3 && parts[0] == "+" -> {
+                    val expiresAtMs = parts[1].toLongOrNull() ?: return@forEach
+                    grants.grant(parts[2], expiresAtMs)
+                    records++
+                }
+                parts.size == 2 && parts[0] == "-" -> {
+                    grants.revoke(parts[1])
+                    records++
+                }
+            }
+        }
+        return records
+    }
+
+    @Throws(IOException::class)
+    fun appendGrant(packageName: String, expiresAtMs: Long) {
+        append("+ $expiresAtMs $packageName\n")
+    }
+
+    @Throws(IOException::class)
+    fun appendRevoke(packageName: String) {
+        append("- $packageName\n")
+    }
+
+    /** Compacts the journal if it has grown well past the live grant count. */
+    @Throws(IOException::class)
+    fun compactIfNeeded(grants: TemporaryUnlockGrants) {
+        if (records >= COMPACT_MIN_RECORDS && records > grants.size * COMPACT_RATIO) {
+            compact(grants)
+        }
+    }
+
+    /** Rewrites the journal so it holds exactly one record per live grant. */
+    @Throws(IOException::class)
+    fun compact(grants: TemporaryUnlockGrants) {
+        val builder = StringBuilder()
+        grants.forEach { packageName, expiresAtMs ->
+            builder.append("+ ").append(expiresAtMs).append(' ').append(packageName).append('\n')
+        }
+
+        val temp = File(file.parentFile, "${file.name}.tmp")
+        FileOutputStream(temp).use { out ->
+            out.write(builder.toString().toByteArray(Charsets.UTF_8))
+            out.fd.sync()
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete()
+            throw IOException("Failed to replace ${file.name}")
+        }
+        records = grants.size
+    }
+
+    // Drops a torn tail left by a crash mid-append
+    private fun truncate(length: Long) {
+        RandomAccessFile(file, "rw").use { it.setLength(length) }
+    }
+
+    private fun append(line: String) {
+        FileOutputStream(file, true).use { it.write(line.toByteArray(Charsets.UTF_8)) }
+        records++
+    }
+
+    private companion object {
+        const val COMPACT_MIN_RECORDS = 256
+        const val COMPACT_RATIO = 4
+    }
+}
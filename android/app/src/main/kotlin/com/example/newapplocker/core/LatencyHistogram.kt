@@ -0,0 +1,105 @@
+package com.example.newapplocker.core
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Fixed-size latency histogram with log-linear buckets, in the style of HdrHistogram.
+ *
+ * Values are microseconds. The first 32 buckets hold 0..31us exactly; above that each power
+ * of two is split into 16 sub-buckets, so any recorded value is reported within about 6% of
+ * what was measured. Values past [MAX_TRACKABLE_US] (about 67s) are clamped into the last
+ * bucket. [record] is a couple of shifts and an atomic increment and never allocates, so it
+ * can sit on the accessibility event path. Readers take a [Summary] at any time.
+ */
+class LatencyHistogram {
+
+    class Summary(
+        val count: Long,
+        val p50Us: Long,
+        val p90Us: Long,
+        val p99Us: Long,
+        val maxUs: Long
+    )
+
+    private val counts = AtomicLongArray(BUCKET_COUNT)
+    private val total = AtomicLong()
+    private val max = AtomicLong()
+
+    fun record(valueUs: Long) {
+        val value = valueUs.coerceIn(0L, MAX_TRACKABLE_US)
+        counts.incrementAndGet(indexOf(value))
+        total.incrementAndGet()
+
+        var current = max.get()
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get()
+        }
+    }
+
+    fun count(): Long = total.get()
+
+    /**
+     * Value at or below which [percentile] (0..100) of the samples fall, reported as the top
+     * of its bucket. Returns 0 when nothing has been recorded.
+     */
+    fun valueAtPercentile(percentile: Double): Long {
+        val count = total.get()
+        if (count == 0L) return 0L
+
+        val target = maxOf(1L, Math.ceil(count * percentile / 100.0).toLong())
+        var seen = 0L
+        for (index in 0 until BUCKET_COUNT) {
+            seen += counts.get(index)
+            if (seen >= target) return minOf(highestValueOf(index), max.get())
+        }
+        return max.get()
+    }
+
+    fun summary(): Summary {
+        return Summary(
+            total.get(),
+            valueAtPercentile(50.0),
+            valueAtPercentile(90.0),
+            valueAtPercentile(99.0),
+            max.get()
+        )
+    }
+
+    fun reset() {
+        for (index in 0 until BUCKET_COUNT) {
+            counts.set(index, 0L)
+        }
+        total.set(0L)
+        max.set(0L)
+    }
+
+    companion object {
+        private const val SUB_BUCKET_BITS = 5
+        private const val SUB_BUCKET_COUNT = 1 shl SUB_BUCKET_BITS
+        private const val SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2
+        private const val MAX_MAGNITUDE = 26
+
+        /** Largest value kept apart from the others; anything above is clamped to it. */
+        const val MAX_TRACKABLE_US = (1L shl MAX_MAGNITUDE) - 1
+
+        private const val BUCKET_COUNT =
+            SUB_BUCKET_COUNT + (MAX_MAGNITUDE - SUB_BUCKET_BITS) * SUB_BUCKET_HALF
+
+        private fun indexOf(value: Long): Int {
+            if (value < SUB_BUCKET_COUNT) return value.toInt()
+            val magnitude = 63 - java.lang.Long.numberOfLeadingZeros(value)
+            val shift = magnitude - (SUB_BUCKET_BITS - 1)
+            val subBucket = (value ushr shift).toInt()
+            return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (subBucket - SUB_BUCKET_HALF)
+        }
+
+        private fun highestValueOf(index: Int): Long {
+            if (index < SUB_BUCKET_COUNT) return index.toLong()
+            val offset = index - SUB_BUCKET_COUNT
+            val shift = offset / SUB_BUCKET_HALF + 1
+            val subBucket = (offset % SUB_BUCKET_HALF + SUB_BUCKET_HALF).toLong()
+            return ((subBucket + 1) shl shift) - 1
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.newapplocker.core
+
+/**
+ * The per-event lock decision, kept free of Android types so it can be measured on the JVM.
+ *
+ * [decide] reads only the immutable [LockPolicy] snapshot and the [SystemPackageClassifier],
+ * both of which are lock-free and allocation-free for a lookup. Given an interned package ID,
+ * an unlocked package costs one bitset probe; the classifier only runs for locked ones.
+ */
+class LockDecider(private val classifier: SystemPackageClassifier) {
+
+    enum class Outcome {
+        /** Monitoring is switched off; nothing is checked. */
+        MONITORING_DISABLED,
+        /** The package is not locked, or belongs to the system shell. */
+        NOT_LOCKED,
+        /** The package is locked but currently holds a temporary unlock. */
+        TEMPORARILY_UNLOCKED,
+        /** The package must be sent home and the PIN pad shown. */
+        LOCK
+    }
+
+    fun isSystemPackage(packageName: CharSequence): Boolean = classifier.isSystemPackage(packageName)
+
+    fun decide(policy: LockPolicy, packageName: CharSequence): Outcome {
+        return decide(policy, PackageIdTable.SHARED.idOf(packageName), packageName)
+    }
+
+    /** [packageId] must be the ID of [packageName] in [PackageIdTable.SHARED], or NO_ID. */
+    fun decide(policy: LockPolicy, packageId: Int, packageName: CharSequence): Outcome {
+        if (!policy.monitoringEnabled) return Outcome.MONITORING_DISABLED
+        if (!policy.isLocked(packageId) || classifier.isSystemPackage(packageName)) return Outcome.NOT_LOCKED
+        if (policy.isTemporarilyUnlocked(packageId)) return Outcome.TEMPORARILY_UNLOCKED
+        return Outcome.LOCK
+    }
+}
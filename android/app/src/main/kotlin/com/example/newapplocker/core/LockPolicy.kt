@@ -0,0 +1,56 @@
+package com.example.newapplocker.core
+
+/**
+ * Immutable view of everything the accessibility event path needs to make a lock decision.
+ *
+ * Instances are never mutated; writers build a new snapshot with the `with*` helpers and
+ * publish it in one reference swap, so readers can hold on to a snapshot for the duration of
+ * an event without locking or copying.
+ *
+ * Both sets are also kept as [PackageIdSet]s over [PackageIdTable.SHARED], so the event path
+ * can test an interned package ID with a single array probe instead of hashing a String.
+ */
+class LockPolicy(
+    val lockedApps: Set<String>,
+    val temporarilyUnlockedApps: Set<String>,
+    val monitoringEnabled: Boolean
+) {
+
+    val lockedIds: PackageIdSet = PackageIdSet.of(PackageIdTable.SHARED, lockedApps)
+
+    val temporarilyUnlockedIds: PackageIdSet = PackageIdSet.of(PackageIdTable.SHARED, temporarilyUnlockedApps)
+
+    fun isLocked(packageName: String): Boolean = lockedApps.contains(packageName)
+
+    fun isLocked(packageId: Int): Boolean = lockedIds.contains(packageId)
+
+    fun isTemporarilyUnlocked(packageName: String): Boolean = temporarilyUnlockedApps.contains(packageName)
+
+    fun isTemporarilyUnlocked(packageId: Int): Boolean = temporarilyUnlockedIds.contains(packageId)
+
+    fun withLockedApps(packageNames: Collection<String>): LockPolicy =
+        LockPolicy(packageNames.toSet(), temporarilyUnlockedApps, monitoringEnabled)
+
+    fun withLockedApp(packageName: String): LockPolicy =
+        if (lockedApps.contains(packageName)) this
+        else LockPolicy(lockedApps + packageName, temporarilyUnlockedApps, monitoringEnabled)
+
+    fun withoutLockedApp(packageName: String): LockPolicy =
+        if (!lockedApps.contains(packageName)) this
+        else LockPolicy(lockedApps - packageName, temporarilyUnlockedApps, monitoringEnabled)
+
+    fun withMonitoringEnabled(enabled: Boolean): LockPolicy =
+        if (enabled == monitoringEnabled) this else LockPolicy(lockedApps, temporarilyUnlockedApps, enabled)
+
+    fun withTemporarilyUnlockedApps(packageNames: Set<String>): LockPolicy =
+        if (packageNames == temporarilyUnlockedApps) this
+        else LockPolicy(lockedApps, packageNames, monitoringEnabled)
+
+    override fun toString(): String {
+        return "LockPolicy(locked=${lockedApps.size}, temporarilyUnlocked=${temporarilyUnlockedApps.size}, monitoring=$monitoringEnabled)"
+    }
+
+    companion object {
+        val EMPTY = LockPolicy(emptySet(), emptySet(), false)
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.newapplocker.core
+
+/**
+ * Decides when the PIN pad for a locked app is shown, and makes sure stale locks never are.
+ *
+ * A lock is requested right before the service sends the app home. It is then held until the
+ * launcher reports its window ([onLauncherShown]) or, if that never comes, until
+ * [timeoutMs] after the window event that triggered it. There is at most one pending lock:
+ *  - a repeat request for the pending package is collapsed into it;
+ *  - a request for another package supersedes it, and its timeout is cancelled;
+ *  - another app coming to the foreground ([onAppForeground]) cancels it;
+ *  - a request for a package that is no longer in the foreground is refused, so a decision
+ *    that arrives after the user already left never sends them home or shows the pad.
+ * [request] says which of these happened, so the caller only sends the app home for a lock it
+ * actually scheduled.
+ *
+ * Only the focused window moves the foreground. An app in a visible but unfocused window, such
+ * as the other half of a split screen, is locked through [requestSideWindow] instead, which
+ * leaves the foreground alone and whose lock a foreground report does not cancel.
+ *
+ * Time and callbacks come from the injected [Clock] and [Scheduler], so the logic runs the
+ * same against a fake clock as it does against the main looper. Not thread-safe: confine an
+ * instance to the thread that delivers window events.
+ */
+class LockScheduler(
+    private val clock: Clock,
+    private val scheduler: Scheduler,
+    private val timeoutMs: Long,
+    private val presenter: Presenter
+) {
+
+    fun interface Clock {
+        fun uptimeMillis(): Long
+    }
+
+    interface Scheduler {
+        fun schedule(task: Runnable, delayMs: Long)
+        fun cancel(task: Runnable)
+    }
+
+    fun interface Presenter {
+        fun present(packageName: String, eventUptimeMs: Long)
+    }
+
+    enum class Result {
+        /** A new pending lock was scheduled; the caller should send the app home. */
+        SCHEDULED,
+        /** A lock for the package is already pending; there is nothing more to do. */
+        COLLAPSED,
+        /**
+         * The app is no longer in the foreground, or a side window's lock is outranked by the
+         * pending lock of another app; the lock was dropped, leave the app alone.
+         */
+        REFUSED
+    }
+
+    private val timeoutTask = Runnable { presentPending() }
+
+    private var foregroundPackage: String? = null
+
+    /** Package whose lock is waiting to be shown, or null. */
+    var pendingPackage: String? = null
+        private set
+
+    private var pendingEventUptimeMs = 0L
+
+    // Whether the pending lock came from requestSideWindow
+    private var pendingSideWindow = false
+
+    /** A non-system app reported a window. Cancels a pending lock for any other package. */
+    fun onAppForeground(packageName: String) {
+        foregroundPackage = packageName
+        if (pendingPackage != null && pendingPackage != packageName && !pendingSideWindow) {
+            cancel()
+        }
+    }
+
+    /** The launcher reported a window: a pending lock can be shown on top of it now. */
+    fun onLauncherShown() {
+        foregroundPackage = null
+        presentPending()
+    }
+
+    /**
+     * Requests a lock for [packageName], triggered by a window event at [eventUptimeMs].
+     * Refused if the app is no longer in the foreground.
+     */
+    fun request(packageName: String, eventUptimeMs: Long): Result {
+        if (foregroundPackage != packageName) return Result.REFUSED
+        return schedule(packageName, eventUptimeMs, sideWindow = false)
+    }
+
+    /**
+     * Requests a lock for [packageName] shown in a window that is visible but not focused.
+     * Such an app is never the foreground package, so this neither checks nor changes it; it is
+     * refused instead if a lock for another package is already pending, since the focused
+     * app's lock goes first.
+     */
+    fun requestSideWindow(packageName: String, eventUptimeMs: Long): Result {
+        val pending = pendingPackage
+        if (pending != null && pending != packageName) return Result.REFUSED
+        return schedule(packageName, eventUptimeMs, sideWindow = true)
+    }
+
+    /** Drops the pending lock, if any, without showing it. */
+    fun cancel() {
+        scheduler.cancel(timeoutTask)
+        pendingPackage = null
+    }
+
+    private fun schedule(packageName: String, eventUptimeMs: Long, sideWindow: Boolean): Result {
+        if (pendingPackage == packageName) {
+            // Collapse: keep the original event time, the timeout already runs from it
+            return Result.COLLAPSED
+        }
+
+        scheduler.cancel(timeoutTask)
+        pendingPackage = packageName
+        pendingEventUptimeMs = eventUptimeMs
+        pendingSideWindow = sideWindow
+        val delayMs = (eventUptimeMs + timeoutMs - clock.uptimeMillis()).coerceAtLeast(0L)
+        scheduler.schedule(timeoutTask, delayMs)
+        return Result.SCHEDULED
+    }
+
+    private fun presentPending() {
+        val packageName = pendingPackage ?: return
+        val eventUptimeMs = pendingEventUptimeMs
+        cancel()
+        presenter.present(packageName, eventUptimeMs)
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.newapplocker.core
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Per-tag log level table shared by `LogUtil` and `LogUtilManager`.
+ *
+ * Level values match `android.util.Log` so callers can pass either. A lookup is a single map
+ * probe (skipped entirely while no override is set) and never allocates.
+ */
+object LogLevels {
+    const val VERBOSE = 2
+    const val DEBUG = 3
+    const val INFO = 4
+    const val WARN = 5
+    const val ERROR = 6
+
+    @Volatile
+    var defaultLevel = DEBUG
+
+    private val tagLevels = ConcurrentHashMap<String, Int>()
+
+    @JvmStatic
+    fun setLevel(tag: String, level: Int) {
+        tagLevels[tag] = level
+    }
+
+    @JvmStatic
+    fun clearLevel(tag: String) {
+        tagLevels.remove(tag)
+    }
+
+    @JvmStatic
+    fun isLoggable(tag: String, level: Int): Boolean {
+        if (tagLevels.isEmpty()) return level >= defaultLevel
+        val tagLevel = tagLevels[tag]
+        return level >= (tagLevel ?: defaultLevel)
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.newapplocker.core
+
+/**
+ * Immutable set of package IDs from a [PackageIdTable], stored as a bitset.
+ *
+ * IDs are dense, so a membership test is one bounds check and one word read. IDs that were
+ * interned after the set was built are simply not members.
+ */
+class PackageIdSet private constructor(private val words: LongArray, val size: Int) {
+
+    fun contains(id: Int): Boolean {
+        if (id < 0) return false
+        val word = id ushr 6
+        return word < words.size && (words[word] and (1L shl id)) != 0L
+    }
+
+    companion object {
+        @JvmField
+        val EMPTY = PackageIdSet(LongArray(0), 0)
+
+        /** Interns every name in [names] into [table] and returns the set of their IDs. */
+        fun of(table: PackageIdTable, names: Collection<String>): PackageIdSet {
+            if (names.isEmpty()) return EMPTY
+
+            val ids = IntArray(names.size)
+            var maxId = 0
+            for ((index, name) in names.withIndex()) {
+                ids[index] = table.intern(name)
+                maxId = maxOf(maxId, ids[index])
+            }
+            val words = LongArray((maxId ushr 6) + 1)
+            for (id in ids) {
+                words[id ushr 6] = words[id ushr 6] or (1L shl id)
+            }
+            return PackageIdSet(words, names.size)
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.newapplocker.core
+
+/**
+ * Interns package names into dense int IDs: 0, 1, 2, ... in order of first sighting.
+ *
+ * [idOf] hashes the incoming [CharSequence] and compares it character by character against
+ * the interned names, so the accessibility event path can resolve `event.packageName` to an ID
+ * without converting it to a String. Only the first sighting of a package allocates, when
+ * [intern] stores its String; after that [nameOf] hands back that canonical instance.
+ *
+ * Lookups are lock-free. Inserts are serialised and copy the table before publishing it
+ * through a volatile field, which is cheap because the number of distinct packages a device
+ * ever brings to the foreground is small. IDs are never reused or removed.
+ */
+class PackageIdTable {
+
+    // slots holds id + 1 (0 means empty), open addressing with linear probing
+    private class Table(val slots: IntArray, val names: Array<String?>, val size: Int)
+
+    @Volatile
+    private var table = Table(IntArray(INITIAL_CAPACITY), arrayOfNulls(INITIAL_CAPACITY / 2), 0)
+
+    val size: Int
+        get() = table.size
+
+    /** ID of [name], or [NO_ID] if it has never been interned. Never allocates. */
+    fun idOf(name: CharSequence): Int = find(table, name, hash(name))
+
+    /** ID of [name], assigning the next free one on first sighting. */
+    fun intern(name: CharSequence): Int {
+        val id = idOf(name)
+        return if (id != NO_ID) id else insert(name.toString())
+    }
+
+    /** The canonical String for [id]. */
+    fun nameOf(id: Int): String = table.names[id]!!
+
+    @Synchronized
+    private fun insert(name: String): Int {
+        val current = table
+        val hash = hash(name)
+        find(current, name, hash).let { if (it != NO_ID) return it }
+
+        val id = current.size
+        val grow = (id + 1) * 2 > current.slots.size
+        val slots = if (grow) IntArray(current.slots.size * 2) else current.slots.copyOf()
+        val names = if (id < current.names.size) current.names.copyOf() else current.names.copyOf(current.names.size * 2)
+        if (grow) {
+            for (existing in 0 until id) {
+                place(slots, hash(names[existing]!!), existing)
+            }
+        }
+        names[id] = name
+        place(slots, hash, id)
+        table = Table(slots, names, id + 1)
+        return id
+    }
+
+    private fun find(table: Table, name: CharSequence, hash: Int): Int {
+        val slots = table.slots
+        val mask = slots.size - 1
+        var slot = hash and mask
+        while (true) {
+            val entry = slots[slot]
+            if (entry == 0) return NO_ID
+            if (contentEquals(table.names[entry - 1]!!, name)) return entry - 1
+            slot = (slot + 1) and mask
+        }
+    }
+
+    private fun place(slots: IntArray, hash: Int, id: Int) {
+        val mask = slots.size - 1
+        var slot = hash and mask
+        while (slots[slot] != 0) {
+            slot = (slot + 1) and mask
+        }
+        slots[slot] = id + 1
+    }
+
+    companion object {
+        const val NO_ID = -1
+        private const val INITIAL_CAPACITY = 256
+
+        /** The process-wide table that [LockPolicy] snapshots and the event path share. */
+        @JvmField
+        val SHARED = PackageIdTable()
+
+        // Same value as String.hashCode(), which Strings cache, then spread over the low bits
+        private fun hash(name: CharSequence): Int {
+            var h = if (name is String) {
+                name.hashCode()
+            } else {
+                var computed = 0
+                for (i in 0 until name.length) {
+                    computed = 31 * computed + name[i].code
+                }
+                computed
+            }
+            h = h xor (h ushr 16)
+            return h
+        }
+
+        private fun contentEquals(interned: String, name: CharSequence): Boolean {
+            if (interned === name) return true
+            val length = interned.length
+            if (length != name.length) return false
+            for (i in 0 until length) {
+                if (interned[i] != name[i]) return false
+            }
+            return true
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.newapplocker.core
+
+import java.security.MessageDigest
+import java.security.SecureRandom
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 PIN records.
+ *
+ * A record is stored as `pbkdf2_sha256$<iterations>$<salt hex>$<hash hex>`. The iteration count
+ * is part of the record, so it can be re-tuned per device without invalidating existing PINs.
+ * PBKDF2 is implemented directly on `HmacSHA256` because the `PBKDF2WithHmacSHA256` key
+ * factory is not available on every supported API level.
+ */
+object PinKdf {
+    const val SCHEME = "pbkdf2_sha256"
+    const val SALT_LENGTH = 16
+    const val MIN_ITERATIONS = 10_000
+    const val MAX_ITERATIONS = 2_000_000
+
+    private const val SEPARATOR = '$'
+    private const val MAC_ALGORITHM = "HmacSHA256"
+    private const val LEGACY_HASH_HEX_LENGTH = 64
+    private const val CALIBRATION_ITERATIONS = 5_000
+
+    class Record(val iterations: Int, val salt: ByteArray, val hash: ByteArray)
+
+    /** Creates a new record for [pin] with a fresh random salt. */
+    @JvmStatic
+    fun create(pin: CharSequence, iterations: Int, random: SecureRandom): String {
+        val salt = ByteArray(SALT_LENGTH).also { random.nextBytes(it) }
+        val hash = derive(pin, salt, iterations)
+        return listOf(SCHEME, iterations.toString(), PinVerifier.encodeHex(salt), PinVerifier.encodeHex(hash))
+            .joinToString(SEPARATOR.toString())
+    }
+
+    /** Parses a record, or returns null if [stored] is not in this format. */
+    @JvmStatic
+    fun parse(stored: String): Record? {
+        val parts = stored.split(SEPARATOR)
+        if (parts.size != 4 || parts[0] != SCHEME) return null
+        val iterations = parts[1].toIntOrNull() ?: return null
+        if (iterations <= 0) return null
+        val salt = PinVerifier.decodeHex(parts[2]) ?: return null
+        val hash = PinVerifier.decodeHex(parts[3]) ?: return null
+        return Record(iterations, salt, hash)
+    }
+
+    /** True for the unsalted hex SHA-256 format written by earlier versions. */
+    @JvmStatic
+    fun isLegacySha256(stored: String): Boolean {
+        return stored.length == LEGACY_HASH_HEX_LENGTH && PinVerifier.decodeHex(stored) != null
+    }
+
+    @JvmStatic
+    fun verify(pin: CharSequence, record: Record): Boolean {
+        return MessageDigest.isEqual(derive(pin, record.salt, record.iterations), record.hash)
+    }
+
+    /**
+     * Returns the iteration count that makes one derivation take about [targetMs] on the
+     * current CPU, clamped to [MIN_ITERATIONS]..[MAX_ITERATIONS].
+     */
+    @JvmStatic
+    fun calibrate(targetMs: Long): Int {
+        val salt = ByteArray(SALT_LENGTH)
+        // First run warms up the Mac provider
+        derive("0000", salt, CALIBRATION_ITERATIONS)
+        val start = System.nanoTime()
+        derive("0000", salt, CALIBRATION_ITERATIONS)
+        val elapsedNs = (System.nanoTime() - start).coerceAtLeast(1)
+
+        val iterations = CALIBRATION_ITERATIONS.toLong() * targetMs * 1_000_000L / elapsedNs
+        return iterations.coerceIn(MIN_ITERATIONS.toLong(), MAX_ITERATIONS.toLong()).toInt()
+    }
+
+    /** PBKDF2-HMAC-SHA256 with a single 32-byte output block. */
+    @JvmStatic
+    fun derive(pin: CharSequence, salt: ByteArray, iterations: Int): ByteArray {
+        require(pin.isNotEmpty()) { "pin must not be empty" }
+        require(iterations > 0) { "iterations must be positive" }
+
+        val mac = Mac.getInstance(MAC_ALGORITHM)
+        val key = pin.toString().toByteArray(Charsets.UTF_8)
+        mac.init(SecretKeySpec(key, MAC_ALGORITHM))
+        key.fill(0)
+
+        // U1 = PRF(P, S || INT(1))
+        mac.update(salt)
+        mac.update(byteArrayOf(0, 0, 0, 1))
+        val u = mac.doFinal()
+        val result = u.copyOf()
+
+        // Un = PRF(P, Un-1), T = U1 ^ U2 ^ ... ^ Uc
+        for (i in 1 until iterations) {
+            mac.update(u)
+            mac.doFinal(u, 0)
+            for (j in result.indices) {
+                result[j] = (result[j].toInt() xor u[j].toInt()).toByte()
+            }
+        }
+        return result
+    }
+}
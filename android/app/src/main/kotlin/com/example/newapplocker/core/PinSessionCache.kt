@@ -0,0 +1,71 @@
+package com.example.newapplocker.core
+
+import java.security.MessageDigest
+import java.security.SecureRandom
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * Short-lived proof that the PIN was verified recently.
+ *
+ * After a successful KDF check the PIN is MACed with a random per-session key and only the
+ * MAC is kept. Until the grace period runs out a PIN can be checked against it with one
+ * HMAC instead of the full KDF. Nothing is persisted, and a grace period of 0 disables the
+ * cache.
+ */
+class PinSessionCache(graceMs: Long) {
+
+    private val random = SecureRandom()
+    private var sessionKey: ByteArray? = null
+    private var sessionTag: ByteArray? = null
+    private var expiresAtMs = 0L
+
+    @get:Synchronized
+    @set:Synchronized
+    var graceMs: Long = graceMs.coerceAtLeast(0)
+        set(value) {
+            field = value.coerceAtLeast(0)
+            if (field == 0L) clear()
+        }
+
+    /** Starts (or extends) a session for [pin], verified at [nowMs]. */
+    @Synchronized
+    fun remember(pin: CharSequence, nowMs: Long) {
+        if (graceMs == 0L) return
+        val key = ByteArray(KEY_LENGTH).also { random.nextBytes(it) }
+        sessionKey = key
+        sessionTag = tag(key, pin)
+        expiresAtMs = nowMs + graceMs
+    }
+
+    /** True if [pin] matches the PIN of a session that is still valid at [nowMs]. */
+    @Synchronized
+    fun matches(pin: CharSequence, nowMs: Long): Boolean {
+        val key = sessionKey ?: return false
+        val expected = sessionTag ?: return false
+        if (nowMs >= expiresAtMs) {
+            clear()
+            return false
+        }
+        return MessageDigest.isEqual(tag(key, pin), expected)
+    }
+
+    @Synchronized
+    fun clear() {
+        sessionKey?.fill(0)
+        sessionKey = null
+        sessionTag = null
+        expiresAtMs = 0L
+    }
+
+    private fun tag(key: ByteArray, pin: CharSequence): ByteArray {
+        val mac = Mac.getInstance(MAC_ALGORITHM)
+        mac.init(SecretKeySpec(key, MAC_ALGORITHM))
+        return mac.doFinal(pin.toString().toByteArray(Charsets.UTF_8))
+    }
+
+    private companion object {
+        const val MAC_ALGORITHM = "HmacSHA256"
+        const val KEY_LENGTH = 32
+    }
+}
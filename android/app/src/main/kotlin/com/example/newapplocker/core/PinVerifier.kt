@@ -0,0 +1,112 @@
+package com.example.newapplocker.core
+
+import java.security.MessageDigest
+
+/**
+ * Checks an entered PIN against a stored hex SHA-256 hash without per-attempt garbage.
+ *
+ * Each thread keeps its own digest and scratch buffers, and the stored hash is decoded once
+ * and cached until it changes. The comparison is constant time. Safe to share between
+ * threads.
+ */
+class PinVerifier {
+
+    private class Scratch {
+        val digest: MessageDigest = MessageDigest.getInstance(ALGORITHM)
+        val input = ByteArray(MAX_ASCII_PIN_LENGTH)
+        val output = ByteArray(DIGEST_LENGTH)
+    }
+
+    private class DecodedHash(val encoded: String, val bytes: ByteArray)
+
+    @Volatile
+    private var decoded: DecodedHash? = null
+
+    /** True if the SHA-256 of [pin] equals the hex hash [storedHex]. */
+    fun matches(pin: CharSequence, storedHex: String): Boolean {
+        val expected = decodedBytes(storedHex) ?: return false
+        val scratch = SCRATCH.get()!!
+        return MessageDigest.isEqual(digestInto(scratch, pin), expected)
+    }
+
+    private fun decodedBytes(storedHex: String): ByteArray? {
+        val cached = decoded
+        if (cached != null && cached.encoded == storedHex) return cached.bytes
+
+        val bytes = decodeHex(storedHex) ?: return null
+        decoded = DecodedHash(storedHex, bytes)
+        return bytes
+    }
+
+    companion object {
+        private const val ALGORITHM = "SHA-256"
+        private const val DIGEST_LENGTH = 32
+        private const val MAX_ASCII_PIN_LENGTH = 64
+
+        private val HEX_DIGITS = "0123456789abcdef".toCharArray()
+
+        private val SCRATCH = object : ThreadLocal<Scratch>() {
+            override fun initialValue() = Scratch()
+        }
+
+        /** Lowercase hex SHA-256 of [pin], in the format the PIN is stored in. */
+        @JvmStatic
+        fun sha256Hex(pin: CharSequence): String {
+            return encodeHex(digestInto(SCRATCH.get()!!, pin))
+        }
+
+        /** Lowercase hex encoding of [bytes]. */
+        @JvmStatic
+        fun encodeHex(bytes: ByteArray): String {
+            val chars = CharArray(bytes.size * 2)
+            for (i in bytes.indices) {
+                val b = bytes[i].toInt()
+                chars[i * 2] = HEX_DIGITS[(b ushr 4) and 0x0f]
+                chars[i * 2 + 1] = HEX_DIGITS[b and 0x0f]
+            }
+            return String(chars)
+        }
+
+        /** Decodes a hex string (either case), or returns null if it is not valid hex. */
+        @JvmStatic
+        fun decodeHex(hex: String): ByteArray? {
+            if (hex.length % 2 != 0) return null
+            val bytes = ByteArray(hex.length / 2)
+            for (i in bytes.indices) {
+                val hi = Character.digit(hex[i * 2], 16)
+                val lo = Character.digit(hex[i * 2 + 1], 16)
+                if (hi < 0 || lo < 0) return null
+                bytes[i] = ((hi shl 4) or lo).toByte()
+            }
+            return bytes
+        }
+
+        // Hashes the UTF-8 bytes of pin into scratch.output. PINs are ASCII digits, which are
+        // copied into the scratch buffer directly; anything else takes the allocating path.
+        private fun digestInto(scratch: Scratch, pin: CharSequence): ByteArray {
+            val digest = scratch.digest
+            val input = scratch.input
+            var ascii = pin.length <= input.size
+            if (ascii) {
+                for (i in 0 until pin.length) {
+                    val c = pin[i]
+                    if (c.code >= 0x80) {
+                        ascii = false
+                        break
+                    }
+                    input[i] = c.code.toByte()
+                }
+            }
+
+            if (ascii) {
+                digest.update(input, 0, pin.length)
+            } else {
+                digest.update(pin.toString().toByteArray(Charsets.UTF_8))
+            }
+            // Do not leave PIN bytes behind in the scratch buffer
+            input.fill(0, 0, minOf(pin.length, input.size))
+            digest.digest(scratch.output, 0, DIGEST_LENGTH)
+            return scratch.output
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.newapplocker.core
+
+import java.io.Closeable
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Memory-mapped, versioned copy of the [LockPolicy] that any component in any process can read
+ * without IPC or file reads.
+ *
+ * The header carries a generation counter that every write bumps, and a sequence that is odd
+ * while a write is in progress, so a payload left half written by a dead writer is never read.
+ * Checking [generation] is a single mapped read, which lets a reader keep its decoded snapshot
+ * until something actually changed; only then does it [read] the payload.
+ *
+ * Writers take an exclusive file lock and [read] takes a shared one. Taking and releasing the
+ * lock orders the mapped accesses on both sides, so a reader never sees a torn payload; plain
+ * volatile fields cannot order accesses to the mapped buffer, and the fences that could need
+ * API 33. Within a process both also hold the instance monitor, since the JVM refuses a second
+ * lock on a region one of its threads already holds. The lock costs a round trip per [read],
+ * which only runs once the generation has moved.
+ */
+class PolicySegment private constructor(file: File) : Closeable {
+
+    class Snapshot(val generation: Long, val policy: LockPolicy)
+
+    private val raf = RandomAccessFile(file, "rw")
+    private val channel: FileChannel = raf.channel
+
+    @Volatile
+    private var buffer: MappedByteBuffer = map(maxOf(channel.size(), INITIAL_SIZE.toLong()))
+
+    init {
+        if (buffer.getInt(OFFSET_MAGIC) != MAGIC) {
+            initialise()
+        }
+    }
+
+    /**
+     * Generation of the last completed write; 0 if nothing has been written yet. Taken without
+     * the lock, so it is only a hint that something changed: use [read] for the policy itself.
+     */
+    fun generation(): Long = buffer.getLong(OFFSET_GENERATION)
+
+    /** Reads a consistent snapshot, or returns null if none has been written. */
+    @Synchronized
+    fun read(): Snapshot? {
+        channel.lock(0L, Long.MAX_VALUE, true).use {
+            // Odd only if a writer died halfway through; its payload cannot be trusted
+            if (buffer.getLong(OFFSET_SEQUENCE) and 1L != 0L) return null
+            val generation = buffer.getLong(OFFSET_GENERATION)
+            if (generation == 0L) return null
+            val length = buffer.getInt(OFFSET_PAYLOAD_LENGTH)
+            if (length < 0) return null
+            if (HEADER_SIZE + length > buffer.capacity()) {
+                // Another process grew the file; map the new size
+                buffer = map(channel.size())
+                if (HEADER_SIZE + length > buffer.capacity()) return null
+            }
+
+            val mapped = buffer
+            val payload = ByteArray(length)
+            for (i in 0 until length) {
+                payload[i] = mapped.get(HEADER_SIZE + i)
+            }
+            return decode(generation, payload)
+        }
+    }
+
+    /** Publishes [policy] and returns the new generation. */
+    @Synchronized
+    fun write(policy: LockPolicy): Long {
+        val payload = encode(policy)
+        channel.lock(0L, Long.MAX_VALUE, false).use {
+            if (HEADER_SIZE + payload.size > buffer.capacity()) {
+                var size = buffer.capacity().toLong()
+                while (size < HEADER_SIZE + payload.size) size *= 2
+                buffer = map(size)
+            }
+            val mapped = buffer
+            val sequence = mapped.getLong(OFFSET_SEQUENCE)
+            val generation = mapped.getLong(OFFSET_GENERATION) + 1
+
+            // Odd while the payload is being rewritten
+            mapped.putLong(OFFSET_SEQUENCE, sequence or 1L)
+            mapped.putInt(OFFSET_PAYLOAD_LENGTH, payload.size)
+            for (i in payload.indices) {
+                mapped.put(HEADER_SIZE + i, payload[i])
+            }
+            mapped.putLong(OFFSET_GENERATION, generation)
+            mapped.putLong(OFFSET_SEQUENCE, (sequence or 1L) + 1)
+            return generation
+        }
+    }
+
+    override fun close() {
+        channel.close()
+        raf.close()
+    }
+
+    private fun initialise() {
+        channel.lock().use {
+            // Another process may have initialised it while we waited for the lock
+            if (buffer.getInt(OFFSET_MAGIC) == MAGIC) return
+            buffer.putInt(OFFSET_MAGIC, MAGIC)
+            buffer.putInt(OFFSET_VERSION, VERSION)
+            buffer.putLong(OFFSET_SEQUENCE, 0L)
+            buffer.putLong(OFFSET_GENERATION, 0L)
+            buffer.putInt(OFFSET_PAYLOAD_LENGTH, 0)
+        }
+    }
+
+    private fun map(size: Long): MappedByteBuffer {
+        if (size > Int.MAX_VALUE) throw IOException("Policy segment too large: $size")
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, size)
+    }
+
+    companion object {
+        private const val MAGIC = 0x51565053 // "QVPS"
+        private const val VERSION = 1
+        private const val OFFSET_MAGIC = 0
+        private const val OFFSET_VERSION = 4
+        private const val OFFSET_SEQUENCE = 8
+        private const val OFFSET_GENERATION = 16
+        private const val OFFSET_PAYLOAD_LENGTH = 24
+        private const val HEADER_SIZE = 32
+        private const val INITIAL_SIZE = 16 * 1024
+
+        @JvmStatic
+        @Throws(IOException::class)
+        fun open(file: File): PolicySegment {
+            file.parentFile?.mkdirs()
+            return PolicySegment(file)
+        }
+
+        // monitoring:byte lockedCount:int (len:short utf8)* tempCount:int (len:short utf8)*
+        private fun encode(policy: LockPolicy): ByteArray {
+            val locked = policy.lockedApps.map { it.toByteArray(Charsets.UTF_8) }
+            val temporary = policy.temporarilyUnlockedApps.map { it.toByteArray(Charsets.UTF_8) }
+            val size = 1 + 4 + 4 + (locked + temporary).sumOf { 2 + it.size }
+
+            val out = ByteBuffer.allocate(size)
+            out.put(if (policy.monitoringEnabled) 1.toByte() else 0.toByte())
+            for (names in arrayOf(locked, temporary)) {
+                out.putInt(names.size)
+                for (name in names) {
+                    out.putShort(name.size.toShort())
+                    out.put(name)
+                }
+            }
+            return out.array()
+        }
+
+        private fun decode(generation: Long, payload: ByteArray): Snapshot? {
+            return try {
+                val input = ByteBuffer.wrap(payload)
+                val monitoring = input.get() != 0.toByte()
+                val locked = readNames(input)
+                val temporary = readNames(input)
+                Snapshot(generation, LockPolicy(locked, temporary, monitoring))
+            } catch (e: RuntimeException) {
+                null
+            }
+        }
+
+        private fun readNames(input: ByteBuffer): Set<String> {
+            val count = input.getInt()
+            val names = HashSet<String>(count * 2)
+            repeat(count) {
+                val bytes = ByteArray(input.getShort().toInt())
+                input.get(bytes)
+                names.add(String(bytes, Charsets.UTF_8))
+            }
+            return names
+        }
+    }
+}
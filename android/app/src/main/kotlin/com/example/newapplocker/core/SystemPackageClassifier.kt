@@ -0,0 +1,138 @@
+package com.example.newapplocker.core
+
+/**
+ * Decides whether a package belongs to the system shell (system UI, launchers, framework) and
+ * must therefore never be locked.
+ *
+ * Rules are compiled once into a flat character trie. [isSystemPackage] walks the input one
+ * character at a time, so a lookup is O(length of the package name) and allocates nothing.
+ *
+ * Two kinds of rule are supported:
+ *  - a package rule (`com.miui.home`) matches the package itself and its sub-packages
+ *    (`com.miui.home.launcher`), but not siblings such as `com.miui.homework`;
+ *  - a prefix rule (`com.android.`) matches any package name that starts with it.
+ */
+class SystemPackageClassifier(packages: Collection<String>, prefixes: Collection<String>) {
+
+    // Flattened trie; node 0 is the root. Children of node n live in
+    // childChars/childNodes[childStart[n] until childStart[n] + childCount[n]], sorted by char.
+    private val flags: ByteArray
+    private val childStart: IntArray
+    private val childCount: IntArray
+    private val childChars: CharArray
+    private val childNodes: IntArray
+
+    init {
+        val root = BuildNode()
+        for (packageName in packages) {
+            if (packageName.isEmpty()) continue
+            insert(root, packageName, FLAG_EXACT)
+            insert(root, "$packageName.", FLAG_PREFIX)
+        }
+        for (prefix in prefixes) {
+            if (prefix.isEmpty()) continue
+            insert(root, prefix, FLAG_PREFIX)
+        }
+
+        val nodes = ArrayList<BuildNode>()
+        collect(root, nodes)
+
+        flags = ByteArray(nodes.size)
+        childStart = IntArray(nodes.size)
+        childCount = IntArray(nodes.size)
+        childChars = CharArray(nodes.size - 1)
+        childNodes = IntArray(nodes.size - 1)
+
+        var next = 0
+        for ((index, node) in nodes.withIndex()) {
+            flags[index] = node.flags.toByte()
+            childStart[index] = next
+            childCount[index] = node.children.size
+            for ((c, child) in node.children) {
+                childChars[next] = c
+                childNodes[next] = child.index
+                next++
+            }
+        }
+    }
+
+    val size: Int
+        get() = flags.size
+
+    fun isSystemPackage(packageName: CharSequence): Boolean {
+        var node = 0
+        val length = packageName.length
+        for (i in 0 until length) {
+            if ((flags[node].toInt() and FLAG_PREFIX) != 0) return true
+            node = child(node, packageName[i])
+            if (node < 0) return false
+        }
+        return (flags[node].toInt() and FLAG_EXACT) != 0
+    }
+
+    private fun child(node: Int, c: Char): Int {
+        var low = childStart[node]
+        var high = low + childCount[node] - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val midChar = childChars[mid]
+            when {
+                midChar < c -> low = mid + 1
+                midChar > c -> high = mid - 1
+                else -> return childNodes[mid]
+            }
+        }
+        return -1
+    }
+
+    private class BuildNode {
+        var flags = 0
+        var index = 0
+        val children = java.util.TreeMap<Char, BuildNode>()
+    }
+
+    private fun insert(root: BuildNode, key: String, flag: Int) {
+        var node = root
+        for (c in key) {
+            node = node.children.getOrPut(c) { BuildNode() }
+        }
+        node.flags = node.flags or flag
+    }
+
+    private fun collect(node: BuildNode, out: MutableList<BuildNode>) {
+        node.index = out.size
+        out.add(node)
+        for (child in node.children.values) {
+            collect(child, out)
+        }
+    }
+
+    companion object {
+        private const val FLAG_EXACT = 1
+        private const val FLAG_PREFIX = 2
+
+        /** Framework and OEM shell packages that are never lockable. */
+        val DEFAULT_PACKAGES = listOf(
+            "android",
+            "com.android.systemui",
+            "com.miui.home",
+            "com.huawei.android.launcher",
+            "com.oneplus.launcher",
+            "com.sec.android.app.launcher"
+        )
+
+        /** Namespaces owned by the platform. */
+        val DEFAULT_PREFIXES = listOf(
+            "com.android.",
+            "com.google.android."
+        )
+
+        /**
+         * Builds a classifier from the defaults plus [extraPackages], typically our own package
+         * and the launchers resolved from `PackageManager` at service start.
+         */
+        fun withDefaults(extraPackages: Collection<String>): SystemPackageClassifier {
+            return SystemPackageClassifier(DEFAULT_PACKAGES + extraPackages, DEFAULT_PREFIXES)
+        }
+    }
+}
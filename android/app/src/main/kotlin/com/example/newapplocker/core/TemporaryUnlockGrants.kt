@@ -0,0 +1,80 @@
+package com.example.newapplocker.core
+
+import java.util.PriorityQueue
+
+/**
+ * Table of temporary unlocks, keyed by package, with an expiry time per grant.
+ *
+ * Lookups are a single map probe. Expiry uses a min-heap ordered by expiry time: re-granting
+ * a package pushes a new heap entry and leaves the old one behind, and stale entries are
+ * discarded when they reach the top. [expire] and [nextExpiryMs] only look at the head of the
+ * heap, so nobody has to poll. Not thread-safe; the owner serialises access.
+ */
+class TemporaryUnlockGrants {
+
+    private class Expiry(val packageName: String, val expiresAtMs: Long)
+
+    private val grants = HashMap<String, Long>()
+    private val heap = PriorityQueue<Expiry>(11) { a, b -> a.expiresAtMs.compareTo(b.expiresAtMs) }
+
+    val size: Int
+        get() = grants.size
+
+    /** Grants [packageName] until [expiresAtMs], or indefinitely with [NO_EXPIRY]. */
+    fun grant(packageName: String, expiresAtMs: Long) {
+        grants[packageName] = expiresAtMs
+        if (expiresAtMs != NO_EXPIRY) {
+            heap.add(Expiry(packageName, expiresAtMs))
+        }
+    }
+
+    /** Returns true if a grant was removed. */
+    fun revoke(packageName: String): Boolean = grants.remove(packageName) != null
+
+    fun isGranted(packageName: String, nowMs: Long): Boolean {
+        val expiresAtMs = grants[packageName] ?: return false
+        return expiresAtMs > nowMs
+    }
+
+    /** Expiry time of the grant for [packageName], or null if it has none. */
+    fun expiryOf(packageName: String): Long? = grants[packageName]
+
+    /** Removes every grant that has expired at [nowMs] and returns the affected packages. */
+    fun expire(nowMs: Long): List<String> {
+        var expired: MutableList<String>? = null
+        while (true) {
+            val head = heap.peek() ?: break
+            if (head.expiresAtMs > nowMs) break
+            heap.poll()
+            // Skip entries superseded by a later grant or revoke
+            if (grants[head.packageName] == head.expiresAtMs) {
+                grants.remove(head.packageName)
+                if (expired == null) expired = ArrayList()
+                expired.add(head.packageName)
+            }
+        }
+        return expired ?: emptyList()
+    }
+
+    /** Earliest pending expiry, or [NO_EXPIRY] if no grant expires. */
+    fun nextExpiryMs(): Long {
+        while (true) {
+            val head = heap.peek() ?: return NO_EXPIRY
+            if (grants[head.packageName] == head.expiresAtMs) return head.expiresAtMs
+            heap.poll()
+        }
+    }
+
+    fun packages(): Set<String> = HashSet(grants.keys)
+
+    /** Calls [action] for every live grant. */
+    fun forEach(action: (packageName: String, expiresAtMs: Long) -> Unit) {
+        for ((packageName, expiresAtMs) in grants) {
+            action(packageName, expiresAtMs)
+        }
+    }
+
+    companion object {
+        const val NO_EXPIRY = Long.MAX_VALUE
+    }
+}
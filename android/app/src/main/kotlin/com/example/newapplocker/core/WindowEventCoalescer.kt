@@ -0,0 +1,49 @@
+package com.example.newapplocker.core
+
+/**
+ * Collapses bursts of window-state events for the same package.
+ *
+ * A single app launch reports its splash screen, main activity and any dialogs as separate
+ * window-state changes. The first event for a package is always accepted, so a lock still
+ * fires without added latency; repeats for that same package are dropped until [windowMs] has
+ * passed since the last accepted event. An event for any other package is accepted immediately
+ * and starts a new window. Packages are compared by their [PackageIdTable] ID.
+ *
+ * Not thread-safe: confine an instance to the thread that delivers events.
+ */
+class WindowEventCoalescer(windowMs: Long) {
+
+    var windowMs: Long = windowMs
+        set(value) {
+            field = value.coerceAtLeast(0L)
+        }
+
+    private var lastPackageId = PackageIdTable.NO_ID
+    private var lastAcceptedAt = 0L
+
+    init {
+        this.windowMs = windowMs
+    }
+
+    /**
+     * Returns true if the event should run through the decision logic, false if it is a
+     * repeat inside the current window.
+     */
+    fun accept(packageId: Int, nowMs: Long): Boolean {
+        if (packageId == lastPackageId && nowMs - lastAcceptedAt < windowMs) {
+            return false
+        }
+        lastPackageId = packageId
+        lastAcceptedAt = nowMs
+        return true
+    }
+
+    /** Forgets the current window so the next event is accepted regardless of package. */
+    fun reset() {
+        lastPackageId = PackageIdTable.NO_ID
+    }
+
+    companion object {
+        const val DEFAULT_WINDOW_MS = 300L
+    }
+}
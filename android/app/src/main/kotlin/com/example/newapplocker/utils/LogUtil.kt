@@ -1,18 +1,43 @@
 package com.example.newapplocker.utils
 
 import android.util.Log
+import com.example.newapplocker.BuildConfig
 
 object LogUtilManager {
-    private const val TAG = "AppLocker"
+    @PublishedApi
+    internal const val TAG = "AppLocker"
 
     fun i(className: String, message: String) {
-        Log.i(TAG, "$className: $message")
+        if (LogUtil.isLoggable(className, Log.INFO))
+            Log.i(TAG, "$className: $message")
     }
 
     fun e(className: String, message: String) {
-        Log.e(TAG, "$className: $message")
+        if (LogUtil.isLoggable(className, Log.ERROR))
+            Log.e(TAG, "$className: $message")
     }
-     fun w(className: String, message: String) {
-        Log.w(TAG, "$className: $message")
+
+    fun w(className: String, message: String) {
+        if (LogUtil.isLoggable(className, Log.WARN))
+            Log.w(TAG, "$className: $message")
+    }
+
+    // Lazy overloads for hot paths. They are inlined, so the message lambda is never
+    // allocated and the string is only built when the level is enabled; debug output is
+    // compiled out of release builds through BuildConfig.DEBUG.
+
+    inline fun d(className: String, message: () -> String) {
+        if (BuildConfig.DEBUG && LogUtil.isLoggable(className, Log.DEBUG))
+            Log.d(TAG, "$className: ${message()}")
+    }
+
+    inline fun i(className: String, message: () -> String) {
+        if (LogUtil.isLoggable(className, Log.INFO))
+            Log.i(TAG, "$className: ${message()}")
+    }
+
+    inline fun w(className: String, message: () -> String) {
+        if (LogUtil.isLoggable(className, Log.WARN))
+            Log.w(TAG, "$className: ${message()}")
     }
 }
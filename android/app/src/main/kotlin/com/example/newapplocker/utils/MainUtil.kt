@@ -10,6 +10,7 @@ object MainUtilManager {
 
     fun init(context: Context) {
         this.context = context.applicationContext
+        MainUtil.getInstance().init(context)
     }
 
     fun getInstance(): MainUtilManager {
@@ -0,0 +1,53 @@
+plugins {
+    id("org.jetbrains.kotlin.jvm") version "2.1.0"
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+// Host-JVM benchmarks and tests for the Android-free parts of the app: the Kotlin `core`
+// package, the mapped key-value store and the logging facade. They are compiled straight from
+// the app's sources so the numbers always describe the code that ships. The logging facade
+// needs android.util.Log and BuildConfig, which src/main/java stands in for with a release
+// configuration.
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include("com/example/newapplocker/utils/MappedKeyValueStore.java")
+            include("com/example/newapplocker/utils/LogUtil.java")
+            include("com/example/newapplocker/BuildConfig.java")
+            include("android/util/Log.java")
+        }
+    }
+}
+
+kotlin {
+    sourceSets.named("main") {
+        kotlin.srcDir("../app/src/main/kotlin")
+        kotlin.include("com/example/newapplocker/core/**")
+        kotlin.include("com/example/newapplocker/utils/LogUtil.kt")
+    }
+    compilerOptions {
+        jvmTarget.set(org.jetbrains.kotlin.gradle.dsl.JvmTarget.JVM_11)
+    }
+}
+
+dependencies {
+    testImplementation("junit:junit:4.13.2")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+jmh {
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    warmup.set("1s")
+    timeOnIteration.set("1s")
+    // Allocation per operation (gc.alloc.rate.norm) is reported next to every score
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    (project.findProperty("jmh.includes") as String?)?.let { includes.set(listOf(it)) }
+}
@@ -0,0 +1,16 @@
+// A build of its own: the Android build's settings need the Flutter SDK and evaluate :app,
+// neither of which these host-JVM benchmarks use. Run from this directory.
+pluginManagement {
+    repositories {
+        gradlePluginPortal()
+        mavenCentral()
+    }
+}
+
+dependencyResolutionManagement {
+    repositories {
+        mavenCentral()
+    }
+}
+
+rootProject.name = "benchmarks"
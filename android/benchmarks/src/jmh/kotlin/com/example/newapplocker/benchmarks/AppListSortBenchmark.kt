@@ -0,0 +1,39 @@
+package com.example.newapplocker.benchmarks
+
+import com.example.newapplocker.core.AppNameOrder
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/** Sorting the installed-apps listing by name, as InstalledAppsIndex does once per change. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class AppListSortBenchmark {
+
+    class Entry(val packageName: String, val appName: String)
+
+    @Param("200", "5000")
+    var size = 0
+
+    private lateinit var entries: List<Entry>
+
+    @Setup
+    fun setUp() {
+        val packages = PackageCorpus.packages(size)
+        val names = PackageCorpus.appNames(size)
+        entries = packages.indices.map { Entry(packages[it], names[it]) }
+    }
+
+    @Benchmark
+    fun sortedByLowercase(): List<Entry> = entries.sortedBy { it.appName.lowercase() }
+
+    @Benchmark
+    fun sortedWithAppNameOrder(): List<Entry> = entries.sortedWith(AppNameOrder.byName { it.appName })
+}
@@ -0,0 +1,102 @@
+package com.example.newapplocker.benchmarks
+
+import com.example.newapplocker.utils.MappedKeyValueStore
+import org.openjdk.jmh.annotations.AuxCounters
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+/**
+ * Write amplification of the MainUtil store: the same five-key update applied as separate
+ * puts, as one transaction and as a deferred (write-behind) commit. Besides time per update,
+ * JMH reports the bytes appended and the header commits per update as secondary results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class KeyValueStoreBenchmark {
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    open class WriteCounters {
+        @JvmField
+        var bytesWritten = 0L
+
+        @JvmField
+        var commits = 0L
+    }
+
+    private lateinit var file: File
+    private lateinit var store: MappedKeyValueStore
+    private var update = 0L
+
+    @Setup(Level.Iteration)
+    fun setUp() {
+        file = File.createTempFile("kv-bench", ".kv")
+        file.delete()
+        store = MappedKeyValueStore(file)
+        store.setWriteBehindDelayMs(WRITE_BEHIND_DELAY_MS)
+    }
+
+    @TearDown(Level.Iteration)
+    fun tearDown() {
+        store.close()
+        file.delete()
+    }
+
+    @Benchmark
+    fun separatePuts(counters: WriteCounters) = measure(counters) {
+        store.putLong("last_unlock_time", update)
+        store.putString("last_unlocked_package", PACKAGES[(update % PACKAGES.size).toInt()])
+        store.putInt("unlock_count", update.toInt())
+        store.putBoolean("session_active", true)
+        store.putLong("session_started", update)
+    }
+
+    @Benchmark
+    fun transaction(counters: WriteCounters) = measure(counters) {
+        store.edit()
+            .putLong("last_unlock_time", update)
+            .putString("last_unlocked_package", PACKAGES[(update % PACKAGES.size).toInt()])
+            .putInt("unlock_count", update.toInt())
+            .putBoolean("session_active", true)
+            .putLong("session_started", update)
+            .commit()
+    }
+
+    @Benchmark
+    fun deferredTransaction(counters: WriteCounters) = measure(counters) {
+        store.edit()
+            .putLong("last_unlock_time", update)
+            .putString("last_unlocked_package", PACKAGES[(update % PACKAGES.size).toInt()])
+            .putInt("unlock_count", update.toInt())
+            .putBoolean("session_active", true)
+            .putLong("session_started", update)
+            .commitDeferred()
+    }
+
+    // Deferred writes land on the write-behind thread, so the deltas are attributed to
+    // whichever update is running when they do; the totals per iteration are still exact
+    // except for whatever is left pending when the iteration ends.
+    private inline fun measure(counters: WriteCounters, write: () -> Unit) {
+        val bytesBefore = store.bytesWritten
+        val commitsBefore = store.commitCount
+        update++
+        write()
+        counters.bytesWritten += store.bytesWritten - bytesBefore
+        counters.commits += store.commitCount - commitsBefore
+    }
+
+    private companion object {
+        const val WRITE_BEHIND_DELAY_MS = 50L
+        val PACKAGES = PackageCorpus.packages(64)
+    }
+}
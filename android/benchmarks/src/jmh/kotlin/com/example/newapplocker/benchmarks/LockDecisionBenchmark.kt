@@ -0,0 +1,103 @@
+package com.example.newapplocker.benchmarks
+
+import com.example.newapplocker.core.LockDecider
+import com.example.newapplocker.core.LockPolicy
+import com.example.newapplocker.core.PackageIdTable
+import com.example.newapplocker.core.SystemPackageClassifier
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Per-event cost of the accessibility decision: system-package classification on its own,
+ * against the substring checks it replaced, package interning, and the whole
+ * [LockDecider.decide] call from a name and from an already interned ID.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class LockDecisionBenchmark {
+
+    private lateinit var events: Array<String>
+    private lateinit var eventIds: IntArray
+    // Same names as [events] but not Strings, like an AccessibilityEvent's CharSequence
+    private lateinit var eventChars: Array<CharSequence>
+    private lateinit var classifier: SystemPackageClassifier
+    private lateinit var decider: LockDecider
+    private lateinit var policy: LockPolicy
+    private var cursor = 0
+
+    @Setup
+    fun setUp() {
+        val packages = PackageCorpus.packages()
+        events = PackageCorpus.eventStream(packages, EVENT_COUNT)
+        classifier = SystemPackageClassifier.withDefaults(PackageCorpus.LAUNCHERS + PackageCorpus.OWN_PACKAGE)
+        decider = LockDecider(classifier)
+
+        val locked = PackageCorpus.subset(packages, 0.05)
+        val temporarilyUnlocked = PackageCorpus.subset(locked.toList(), 0.2)
+        policy = LockPolicy(locked, temporarilyUnlocked, true)
+
+        // The service interns every package it sees, so steady state has them all interned
+        eventIds = IntArray(EVENT_COUNT) { PackageIdTable.SHARED.intern(events[it]) }
+        eventChars = Array(EVENT_COUNT) { StringBuilder(events[it]) }
+    }
+
+    private fun next(): String {
+        val packageName = events[cursor]
+        cursor = (cursor + 1) and (EVENT_COUNT - 1)
+        return packageName
+    }
+
+    private fun nextIndex(): Int {
+        val index = cursor
+        cursor = (cursor + 1) and (EVENT_COUNT - 1)
+        return index
+    }
+
+    @Benchmark
+    fun classify(): Boolean = classifier.isSystemPackage(next())
+
+    @Benchmark
+    fun classifyLegacy(): Boolean = legacyIsSystemPackage(next())
+
+    @Benchmark
+    fun internCharSequence(): Int = PackageIdTable.SHARED.intern(eventChars[nextIndex()])
+
+    @Benchmark
+    fun decide(): LockDecider.Outcome = decider.decide(policy, next())
+
+    @Benchmark
+    fun decideInterned(): LockDecider.Outcome {
+        val index = nextIndex()
+        return decider.decide(policy, eventIds[index], events[index])
+    }
+
+    private companion object {
+        const val EVENT_COUNT = 4096
+
+        val LEGACY_SYSTEM_PACKAGES = setOf(
+            "com.android.systemui",
+            "com.android.launcher",
+            "com.google.android.launcher",
+            "com.miui.home",
+            "com.huawei.android.launcher",
+            "com.oneplus.launcher"
+        )
+
+        // The check AccessibilityService ran on every event before the trie classifier
+        fun legacyIsSystemPackage(packageName: String): Boolean {
+            if (packageName == PackageCorpus.OWN_PACKAGE) return true
+            return LEGACY_SYSTEM_PACKAGES.any { packageName.contains(it) } ||
+                packageName.contains("launcher") ||
+                packageName.startsWith("com.android.") ||
+                packageName.startsWith("com.google.android.") ||
+                packageName == "android"
+        }
+    }
+}
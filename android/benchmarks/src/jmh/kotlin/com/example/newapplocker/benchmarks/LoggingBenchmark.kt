@@ -0,0 +1,85 @@
+package com.example.newapplocker.benchmarks
+
+import com.example.newapplocker.core.LogLevels
+import com.example.newapplocker.utils.LogUtil
+import com.example.newapplocker.utils.LogUtilManager
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.util.concurrent.TimeUnit
+
+/**
+ * Cost of a log call that is suppressed, as on the accessibility event path of a release
+ * build. Compiled against a release BuildConfig, so `d { }` is gated at compile time, and
+ * with a per-tag override that silences `i { }` through the [LogLevels] table at run time.
+ * The eager call builds its message before the gate, which is what the lazy overloads
+ * replaced. Read gc.alloc.rate.norm: every suppressed lazy call should allocate 0 B/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class LoggingBenchmark {
+
+    private lateinit var packages: Array<String>
+    private lateinit var lockedApps: Set<String>
+    private var cursor = 0
+
+    @Setup
+    fun setUp() {
+        val corpus = PackageCorpus.packages(PACKAGE_COUNT)
+        packages = corpus.toTypedArray()
+        lockedApps = PackageCorpus.subset(corpus, 0.05)
+        LogLevels.setLevel(TAG, LogLevels.WARN)
+    }
+
+    @TearDown
+    fun tearDown() {
+        LogLevels.clearLevel(TAG)
+    }
+
+    @Benchmark
+    fun lazyDebugCompiledOut(): Int {
+        val packageName = next()
+        LogUtilManager.d(TAG) { "App switched to: $packageName, locked: ${lockedApps.joinToString()}" }
+        return cursor
+    }
+
+    @Benchmark
+    fun lazyInfoBelowTagLevel(): Int {
+        val packageName = next()
+        LogUtilManager.i(TAG) { "App switched to: $packageName, locked: ${lockedApps.joinToString()}" }
+        return cursor
+    }
+
+    @Benchmark
+    fun formatArgsBelowTagLevel(): Int {
+        LogUtil.i(TAG, "App switched to: %s", next())
+        return cursor
+    }
+
+    @Benchmark
+    fun levelGate(): Boolean = LogLevels.isLoggable(TAG, LogLevels.INFO)
+
+    @Benchmark
+    fun eagerInfoBelowTagLevel(): Int {
+        val packageName = next()
+        LogUtilManager.i(TAG, "App switched to: $packageName, locked: ${lockedApps.joinToString()}")
+        return cursor
+    }
+
+    private fun next(): String {
+        cursor = (cursor + 1) and (packages.size - 1)
+        return packages[cursor]
+    }
+
+    private companion object {
+        const val TAG = "AppLockerAccessibility"
+        // A power of two, so the cursor wraps with a mask
+        const val PACKAGE_COUNT = 1024
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.newapplocker.benchmarks
+
+import java.util.Random
+
+/**
+ * Deterministic package-name and app-name corpora shared by the benchmarks.
+ *
+ * Everything is generated from a fixed seed, so two runs on different machines or commits
+ * measure exactly the same inputs. The mix roughly follows a real device: mostly third-party
+ * packages, with framework, Google and OEM launcher packages sprinkled in, since those take
+ * the classifier's early exits.
+ */
+object PackageCorpus {
+    const val SEED = 0x51566155L
+    const val SIZE = 5000
+
+    const val OWN_PACKAGE = "com.example.newapplocker"
+    val LAUNCHERS = listOf("com.sec.android.app.launcher", "com.miui.home", "com.oneplus.launcher")
+
+    private val VENDORS = listOf(
+        "whatsapp", "facebook", "instagram", "spotify", "netflix", "twitter", "snapchat",
+        "amazon", "paypal", "uber", "zhiliaoapp", "linkedin", "reddit", "discord", "telegram",
+        "microsoft", "adobe", "dropbox", "duolingo", "shazam", "strava", "booking", "airbnb"
+    )
+    private val PRODUCTS = listOf(
+        "android", "mobile", "lite", "music", "messenger", "orca", "katana", "mail", "maps",
+        "wallet", "camera", "notes", "reader", "player", "photos", "chat", "browser", "launcher"
+    )
+    private val SYSTEM_SUFFIXES = listOf(
+        "settings", "vending", "gms", "systemui", "phone", "contacts", "dialer", "calendar",
+        "deskclock", "documentsui", "packageinstaller", "providers.media", "inputmethod.latin"
+    )
+    private val WORDS = listOf(
+        "Photo", "music", "Chat", "Maps", "wallet", "Notes", "reader", "Player", "Mail",
+        "camera", "Bank", "fit", "News", "weather", "Shop", "video", "Drive", "Games", "calc"
+    )
+
+    /** [size] distinct package names; about one in six belongs to the system shell. */
+    fun packages(size: Int = SIZE, seed: Long = SEED): List<String> {
+        val random = Random(seed)
+        val names = LinkedHashSet<String>(size * 2)
+        names.add(OWN_PACKAGE)
+        names.addAll(LAUNCHERS)
+        names.add("android")
+
+        while (names.size < size) {
+            val roll = random.nextInt(12)
+            val name = when {
+                roll == 0 -> "com.android." + SYSTEM_SUFFIXES[random.nextInt(SYSTEM_SUFFIXES.size)] + suffix(random)
+                roll == 1 -> "com.google.android." + SYSTEM_SUFFIXES[random.nextInt(SYSTEM_SUFFIXES.size)] + suffix(random)
+                else -> {
+                    val tld = if (random.nextInt(4) == 0) "org" else "com"
+                    "$tld.${VENDORS[random.nextInt(VENDORS.size)]}.${PRODUCTS[random.nextInt(PRODUCTS.size)]}" + suffix(random)
+                }
+            }
+            names.add(name)
+        }
+        return names.toList()
+    }
+
+    /** [size] display names with mixed case and repeats, as the installed-apps listing has. */
+    fun appNames(size: Int = SIZE, seed: Long = SEED): List<String> {
+        val random = Random(seed)
+        return List(size) {
+            val words = 1 + random.nextInt(3)
+            (0 until words).joinToString(" ") { WORDS[random.nextInt(WORDS.size)] }
+        }
+    }
+
+    /** A reproducible [fraction] of [packages], e.g. the ones the user has locked. */
+    fun subset(packages: List<String>, fraction: Double, seed: Long = SEED): Set<String> {
+        val random = Random(seed xor 0x5DEECE66DL)
+        return packages.filterTo(HashSet()) { random.nextDouble() < fraction }
+    }
+
+    /**
+     * A stream of [length] foreground events drawn from [packages]. Half of the events go to
+     * the first few dozen packages, the way a handful of apps dominate real usage.
+     */
+    fun eventStream(packages: List<String>, length: Int, seed: Long = SEED): Array<String> {
+        val random = Random(seed + 1)
+        val hot = minOf(32, packages.size)
+        return Array(length) {
+            if (random.nextBoolean()) packages[random.nextInt(hot)] else packages[random.nextInt(packages.size)]
+        }
+    }
+
+    private fun suffix(random: Random): String {
+        return if (random.nextInt(3) == 0) "." + PRODUCTS[random.nextInt(PRODUCTS.size)] + random.nextInt(100) else ""
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.newapplocker.benchmarks
+
+import com.example.newapplocker.core.PinKdf
+import com.example.newapplocker.core.PinVerifier
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.security.MessageDigest
+import java.security.SecureRandom
+import java.util.concurrent.TimeUnit
+
+/**
+ * PIN check cost: the legacy SHA-256 hex fold, the allocation-free [PinVerifier] and a
+ * PBKDF2 verify at a few iteration counts. Run with `-prof gc` to see allocation per check.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+open class PinHashBenchmark {
+
+    @State(Scope.Thread)
+    open class KdfRecord {
+        @Param("10000", "100000")
+        var iterations = 0
+
+        lateinit var record: PinKdf.Record
+
+        @Setup
+        fun setUp() {
+            // Fixed seed so every run derives the same salt
+            val random = SecureRandom.getInstance("SHA1PRNG").apply { setSeed(PackageCorpus.SEED) }
+            record = PinKdf.parse(PinKdf.create(PIN, iterations, random))!!
+        }
+    }
+
+    private val verifier = PinVerifier()
+    private lateinit var storedHex: String
+
+    @Setup
+    fun setUp() {
+        storedHex = PinVerifier.sha256Hex(PIN)
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    fun legacyHashFold(): Boolean {
+        // What PinUnlockActivity did per attempt before PinVerifier
+        val digest = MessageDigest.getInstance("SHA-256").digest(PIN.toByteArray())
+        return digest.fold("") { str, it -> str + "%02x".format(it) } == storedHex
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    fun pinVerifier(): Boolean = verifier.matches(PIN, storedHex)
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    fun pbkdf2Verify(kdf: KdfRecord): Boolean = PinKdf.verify(PIN, kdf.record)
+
+    private companion object {
+        const val PIN = "482916"
+    }
+}
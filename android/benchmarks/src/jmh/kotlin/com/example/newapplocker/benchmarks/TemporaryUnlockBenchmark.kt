@@ -0,0 +1,67 @@
+package com.example.newapplocker.benchmarks
+
+import com.example.newapplocker.core.TemporaryUnlockGrants
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Temporary-unlock lookups against a grant table of [grantCount] entries, and the cost of
+ * a grant/release/revoke cycle including the expiry heap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class TemporaryUnlockBenchmark {
+
+    @Param("4", "64", "1024")
+    var grantCount = 0
+
+    private lateinit var events: Array<String>
+    private lateinit var churn: Array<String>
+    private val grants = TemporaryUnlockGrants()
+    private var cursor = 0
+    private var churnCursor = 0
+    private var nowMs = 1_000_000L
+
+    @Setup
+    fun setUp() {
+        val packages = PackageCorpus.packages()
+        events = PackageCorpus.eventStream(packages, EVENT_COUNT)
+        packages.take(grantCount).forEachIndexed { index, packageName ->
+            // Mix grants held in the foreground with ones counting down
+            val expiresAtMs = if (index % 2 == 0) TemporaryUnlockGrants.NO_EXPIRY else Long.MAX_VALUE - index
+            grants.grant(packageName, expiresAtMs)
+        }
+        // Disjoint from the seeded grants so the table size stays at grantCount
+        churn = packages.drop(grantCount).toTypedArray()
+    }
+
+    @Benchmark
+    fun isGranted(): Boolean {
+        val packageName = events[cursor]
+        cursor = (cursor + 1) and (EVENT_COUNT - 1)
+        return grants.isGranted(packageName, nowMs)
+    }
+
+    @Benchmark
+    fun grantReleaseRevoke(): Boolean {
+        val packageName = churn[churnCursor]
+        churnCursor = (churnCursor + 1) % churn.size
+        nowMs++
+        grants.grant(packageName, TemporaryUnlockGrants.NO_EXPIRY)
+        grants.grant(packageName, nowMs + 60_000L)
+        grants.expire(nowMs)
+        return grants.revoke(packageName)
+    }
+
+    private companion object {
+        const val EVENT_COUNT = 4096
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.newapplocker;
+
+/**
+ * Host stand-in for the generated BuildConfig of a release build, so the logging benchmark
+ * measures what release users run.
+ */
+public final class BuildConfig {
+    public static final boolean DEBUG = false;
+
+    private BuildConfig() {
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.newapplocker.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+public class MappedKeyValueStoreTest {
+    // Long enough that no write-behind flush runs during a test
+    private static final long NEVER_MS = 60_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private MappedKeyValueStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), "store.kv");
+        store = new MappedKeyValueStore(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void valuesSurviveReopen() throws IOException {
+        store.edit()
+                .putString("name", "qvault")
+                .putInt("count", 3)
+                .putLong("time", 42L)
+                .putBoolean("active", true)
+                .commit();
+
+        reopen();
+
+        assertFalse(store.isNewlyCreated());
+        assertEquals("qvault", store.getString("name", null));
+        assertEquals(3, store.getInt("count", 0));
+        assertEquals(42L, store.getLong("time", 0L));
+        assertTrue(store.getBoolean("active", false));
+    }
+
+    @Test
+    public void compactionWithPendingDeferredWrite() throws IOException {
+        store.setWriteBehindDelayMs(NEVER_MS);
+        String large = repeat('x', 5_000);
+        store.edit().putString("deferred", large).commitDeferred();
+
+        // Enough superseded records to trigger several compactions while the deferred value,
+        // which has no record of its own yet, is still pending
+        for (int i = 0; i < 20_000; i++) {
+            store.putLong("counter", i);
+        }
+
+        assertEquals(large, store.getString("deferred", null));
+        assertEquals(19_999L, store.getLong("counter", 0L));
+
+        reopen();
+        assertEquals(large, store.getString("deferred", null));
+        assertEquals(19_999L, store.getLong("counter", 0L));
+    }
+
+    @Test
+    public void compactionKeepsPendingDeferredRemoval() throws IOException {
+        store.putString("gone", "value");
+        store.setWriteBehindDelayMs(NEVER_MS);
+        store.edit().remove("gone").commitDeferred();
+
+        for (int i = 0; i < 20_000; i++) {
+            store.putLong("counter", i);
+        }
+
+        assertFalse(store.contains("gone"));
+        reopen();
+        assertFalse(store.contains("gone"));
+    }
+
+    @Test
+    public void synchronousCommitSupersedesDeferredValue() throws IOException {
+        store.setWriteBehindDelayMs(NEVER_MS);
+        store.edit().putInt("key", 1).commitDeferred();
+        store.putInt("key", 2);
+        store.flush();
+
+        reopen();
+        assertEquals(2, store.getInt("key", 0));
+    }
+
+    @Test
+    public void failedCompactionRenameKeepsPendingAndIndex() throws IOException {
+        store.putString("kept", "value");
+        store.setWriteBehindDelayMs(NEVER_MS);
+        store.edit().putString("deferred", "pending").remove("kept").commitDeferred();
+
+        // The open mapping outlives the unlink; a non-empty directory in its place makes the
+        // compacted copy's rename fail
+        assertTrue(file.delete());
+        assertTrue(new File(file, "blocker").mkdirs());
+
+        IOException failure = null;
+        long last = -1;
+        for (int i = 0; i < 20_000 && failure == null; i++) {
+            try {
+                store.putLong("counter", i);
+            } catch (IOException e) {
+                failure = e;
+            }
+            last = i;
+        }
+
+        assertNotNull(failure);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        // The put that triggered compaction was committed before it failed
+        assertEquals(last, store.getLong("counter", -1L));
+        assertEquals("pending", store.getString("deferred", null));
+        assertFalse(store.contains("kept"));
+
+        // The deferred batch is still pending and reaches the file on flush, even though
+        // compaction fails again afterwards
+        long commits = store.getCommitCount();
+        try {
+            store.flush();
+        } catch (IOException expected) {
+        }
+        assertEquals(commits + 1, store.getCommitCount());
+
+        // Once the rename can succeed, the next compaction writes everything out
+        assertTrue(new File(file, "blocker").delete());
+        assertTrue(file.delete());
+        store.putLong("counter", last + 1);
+        reopen();
+        assertEquals(last + 1, store.getLong("counter", -1L));
+        assertEquals("pending", store.getString("deferred", null));
+        assertFalse(store.contains("kept"));
+    }
+
+    private void reopen() throws IOException {
+        store.close();
+        store = new MappedKeyValueStore(file);
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.newapplocker.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bytes written per MainUtil update, against the SharedPreferences path it replaced. There,
+ * every putX was its own edit().apply(), and every apply rewrites the whole XML file, so an
+ * update of n keys cost n full-file writes in the worst case and one in the best case (when
+ * queued applies are merged). Here a transaction appends one record per key plus the 4-byte
+ * header commit.
+ */
+public class WriteAmplificationTest {
+    // A store holding a realistic amount of unrelated state besides the keys being updated
+    private static final int OTHER_KEYS = 40;
+    private static final int UPDATES = 200;
+    private static final int KEYS_PER_UPDATE = 5;
+    private static final String PACKAGE = "com.whatsapp";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MappedKeyValueStore store;
+    // Mirror of the store's contents, for sizing the XML file SharedPreferences would write
+    private final Map<String, Object> contents = new TreeMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        store = new MappedKeyValueStore(new File(folder.getRoot(), "store.kv"));
+        MappedKeyValueStore.Transaction transaction = store.edit();
+        for (int i = 0; i < OTHER_KEYS; i++) {
+            String key = "setting_" + i;
+            String value = "com.example.app" + i;
+            transaction.putString(key, value);
+            contents.put(key, value);
+        }
+        transaction.commit();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void transactionWritesOneRecordPerKeyAndOneCommit() throws IOException {
+        long bytesBefore = store.getBytesWritten();
+        long commitsBefore = store.getCommitCount();
+        long baselineWorst = 0;
+        long baselineBest = 0;
+
+        for (int update = 0; update < UPDATES; update++) {
+            update(update).commit();
+            // Old path: one full-file rewrite per put, or one per update if applies merge
+            for (int key = 1; key <= KEYS_PER_UPDATE; key++) {
+                baselineWorst += sharedPreferencesXmlSize(contents);
+            }
+            baselineBest += sharedPreferencesXmlSize(contents);
+        }
+
+        long bytesPerUpdate = (store.getBytesWritten() - bytesBefore) / UPDATES;
+        assertEquals(UPDATES, store.getCommitCount() - commitsBefore);
+        assertEquals(recordBytesPerUpdate() + 4, bytesPerUpdate);
+
+        long worstPerUpdate = baselineWorst / UPDATES;
+        long bestPerUpdate = baselineBest / UPDATES;
+        System.out.printf("Bytes per %d-key update: store %d, SharedPreferences %d to %d%n",
+                KEYS_PER_UPDATE, bytesPerUpdate, bestPerUpdate, worstPerUpdate);
+        // Even against merged applies the store writes an order of magnitude less
+        assertTrue(bytesPerUpdate * 10 < bestPerUpdate);
+        assertTrue(bytesPerUpdate * 50 < worstPerUpdate);
+    }
+
+    @Test
+    public void separatePutsCommitOncePerKey() throws IOException {
+        long bytesBefore = store.getBytesWritten();
+        long commitsBefore = store.getCommitCount();
+
+        for (int update = 0; update < UPDATES; update++) {
+            store.putLong("last_unlock_time", update);
+            store.putString("last_unlocked_package", PACKAGE);
+            store.putInt("unlock_count", update);
+            store.putBoolean("session_active", true);
+            store.putLong("session_started", update);
+        }
+
+        long bytesPerUpdate = (store.getBytesWritten() - bytesBefore) / UPDATES;
+        assertEquals((long) UPDATES * KEYS_PER_UPDATE, store.getCommitCount() - commitsBefore);
+        assertEquals(recordBytesPerUpdate() + 4 * KEYS_PER_UPDATE, bytesPerUpdate);
+    }
+
+    @Test
+    public void deferredUpdatesMergeIntoOneCommit() throws IOException {
+        store.setWriteBehindDelayMs(60_000);
+        long bytesBefore = store.getBytesWritten();
+        long commitsBefore = store.getCommitCount();
+
+        for (int update = 0; update < UPDATES; update++) {
+            update(update).commitDeferred();
+        }
+        store.flush();
+
+        // Only the last value of each key reaches the file
+        assertEquals(1, store.getCommitCount() - commitsBefore);
+        assertEquals(recordBytesPerUpdate() + 4, store.getBytesWritten() - bytesBefore);
+    }
+
+    private MappedKeyValueStore.Transaction update(int update) {
+        contents.put("last_unlock_time", (long) update);
+        contents.put("last_unlocked_package", PACKAGE);
+        contents.put("unlock_count", update);
+        contents.put("session_active", true);
+        contents.put("session_started", (long) update);
+        return store.edit()
+                .putLong("last_unlock_time", update)
+                .putString("last_unlocked_package", PACKAGE)
+                .putInt("unlock_count", update)
+                .putBoolean("session_active", true)
+                .putLong("session_started", update);
+    }
+
+    // Record layout: 11 bytes of overhead, the UTF-8 key, then the value
+    private static long recordBytesPerUpdate() {
+        return record("last_unlock_time", 8)
+                + record("last_unlocked_package", PACKAGE.length())
+                + record("unlock_count", 4)
+                + record("session_active", 1)
+                + record("session_started", 8);
+    }
+
+    private static long record(String key, int valueBytes) {
+        return 11 + key.length() + valueBytes;
+    }
+
+    // Size of the file SharedPreferencesImpl writes for these contents (XmlUtils.writeMapXml)
+    private static long sharedPreferencesXmlSize(Map<String, Object> values) {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                xml.append("    <string name=\"").append(entry.getKey()).append("\">")
+                        .append(value).append("</string>\n");
+            } else {
+                String type = value instanceof Integer ? "int" : value instanceof Long ? "long" : "boolean";
+                xml.append("    <").append(type).append(" name=\"").append(entry.getKey())
+                        .append("\" value=\"").append(value).append("\" />\n");
+            }
+        }
+        xml.append("</map>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+}
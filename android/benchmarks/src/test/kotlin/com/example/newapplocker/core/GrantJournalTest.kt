@@ -0,0 +1,78 @@
+package com.example.newapplocker.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class GrantJournalTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private lateinit var file: File
+    private lateinit var journal: GrantJournal
+
+    @Before
+    fun setUp() {
+        file = File(folder.root, "grants.journal")
+        journal = GrantJournal(file)
+    }
+
+    @Test
+    fun replayRebuildsGrants() {
+        journal.appendGrant(APP_A, 5_000L)
+        journal.appendGrant(APP_B, 6_000L)
+        journal.appendRevoke(APP_A)
+
+        val grants = TemporaryUnlockGrants()
+        assertEquals(3, GrantJournal(file).replay(grants))
+        assertEquals(setOf(APP_B), grants.packages())
+        assertEquals(6_000L, grants.expiryOf(APP_B))
+    }
+
+    @Test
+    fun tornRevokeIsIgnored() {
+        journal.appendGrant(APP_A, 5_000L)
+        // A crash mid-append of "- com.whatsapp\n"
+        file.appendText("- com.whats")
+
+        val grants = TemporaryUnlockGrants()
+        assertEquals(1, GrantJournal(file).replay(grants))
+        assertEquals(setOf(APP_A), grants.packages())
+    }
+
+    @Test
+    fun tornGrantIsIgnored() {
+        journal.appendGrant(APP_A, 5_000L)
+        // A crash mid-append of "+ 6000 com.example.bank\n"
+        file.appendText("+ 6000 com.exa")
+
+        val grants = TemporaryUnlockGrants()
+        GrantJournal(file).replay(grants)
+        assertEquals(setOf(APP_A), grants.packages())
+        assertNull(grants.expiryOf("com.exa"))
+    }
+
+    @Test
+    fun replayCutsTornTailSoLaterAppendsStandAlone() {
+        journal.appendGrant(APP_A, 5_000L)
+        file.appendText("- com.whats")
+
+        val reopened = GrantJournal(file)
+        reopened.replay(TemporaryUnlockGrants())
+        reopened.appendRevoke(APP_A)
+
+        val grants = TemporaryUnlockGrants()
+        assertEquals(2, GrantJournal(file).replay(grants))
+        assertEquals(emptySet<String>(), grants.packages())
+    }
+
+    private companion object {
+        const val APP_A = "com.whatsapp"
+        const val APP_B = "com.example.bank"
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.newapplocker.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+class LockSchedulerTest {
+
+    /** Clock and scheduler in one: tasks run only when the test advances time. */
+    private class FakeTime : LockScheduler.Clock, LockScheduler.Scheduler {
+        var nowMs = 1_000L
+        private val tasks = ArrayList<Pair<Long, Runnable>>()
+
+        override fun uptimeMillis(): Long = nowMs
+
+        override fun schedule(task: Runnable, delayMs: Long) {
+            tasks.add(nowMs + delayMs to task)
+        }
+
+        override fun cancel(task: Runnable) {
+            tasks.removeAll { it.second === task }
+        }
+
+        fun pending(): Int = tasks.size
+
+        fun advance(ms: Long) {
+            val until = nowMs + ms
+            while (true) {
+                val next = tasks.filter { it.first <= until }.minByOrNull { it.first } ?: break
+                tasks.remove(next)
+                nowMs = next.first
+                next.second.run()
+            }
+            nowMs = until
+        }
+    }
+
+    private lateinit var time: FakeTime
+    private lateinit var presented: MutableList<Pair<String, Long>>
+    private lateinit var scheduler: LockScheduler
+
+    @Before
+    fun setUp() {
+        time = FakeTime()
+        presented = ArrayList()
+        scheduler = LockScheduler(time, time, TIMEOUT_MS) { packageName, eventUptimeMs ->
+            presented.add(packageName to eventUptimeMs)
+        }
+    }
+
+    @Test
+    fun presentsOnLauncherShown() {
+        scheduler.onAppForeground(APP_A)
+        assertEquals(LockScheduler.Result.SCHEDULED, scheduler.request(APP_A, time.nowMs))
+
+        time.advance(100)
+        scheduler.onLauncherShown()
+
+        assertEquals(listOf(APP_A to 1_000L), presented)
+        assertNull(scheduler.pendingPackage)
+        assertEquals(0, time.pending())
+    }
+
+    @Test
+    fun timeoutRunsFromEventTimestamp() {
+        val eventUptimeMs = time.nowMs
+        scheduler.onAppForeground(APP_A)
+        // The decision reached the main thread 200ms after the event
+        time.advance(200)
+        scheduler.request(APP_A, eventUptimeMs)
+
+        time.advance(TIMEOUT_MS - 201)
+        assertTrue(presented.isEmpty())
+
+        time.advance(1)
+        assertEquals(listOf(APP_A to eventUptimeMs), presented)
+        assertEquals(eventUptimeMs + TIMEOUT_MS, time.nowMs)
+    }
+
+    @Test
+    fun timeoutFiresAtOnceForAnOldEvent() {
+        val eventUptimeMs = time.nowMs
+        scheduler.onAppForeground(APP_A)
+        time.advance(TIMEOUT_MS * 2)
+        scheduler.request(APP_A, eventUptimeMs)
+
+        time.advance(0)
+        assertEquals(listOf(APP_A to eventUptimeMs), presented)
+    }
+
+    @Test
+    fun duplicateRequestCollapses() {
+        scheduler.onAppForeground(APP_A)
+        assertEquals(LockScheduler.Result.SCHEDULED, scheduler.request(APP_A, 1_000L))
+        time.advance(50)
+        assertEquals(LockScheduler.Result.COLLAPSED, scheduler.request(APP_A, 1_050L))
+        assertEquals(1, time.pending())
+
+        // The original event time is kept, so the timeout is not pushed back
+        time.advance(TIMEOUT_MS - 50)
+        assertEquals(listOf(APP_A to 1_000L), presented)
+        time.advance(TIMEOUT_MS)
+        assertEquals(1, presented.size)
+    }
+
+    @Test
+    fun requestForAnotherPackageSupersedes() {
+        scheduler.onAppForeground(APP_A)
+        scheduler.request(APP_A, 1_000L)
+        time.advance(100)
+        scheduler.onAppForeground(APP_B)
+        assertEquals(LockScheduler.Result.SCHEDULED, scheduler.request(APP_B, 1_100L))
+        assertEquals(APP_B, scheduler.pendingPackage)
+        assertEquals(1, time.pending())
+
+        time.advance(TIMEOUT_MS)
+        assertEquals(listOf(APP_B to 1_100L), presented)
+    }
+
+    @Test
+    fun foregroundChangeCancelsPendingLock() {
+        scheduler.onAppForeground(APP_A)
+        scheduler.request(APP_A, 1_000L)
+        scheduler.onAppForeground(APP_B)
+
+        assertNull(scheduler.pendingPackage)
+        assertEquals(0, time.pending())
+        time.advance(TIMEOUT_MS * 2)
+        scheduler.onLauncherShown()
+        assertTrue(presented.isEmpty())
+    }
+
+    @Test
+    fun foregroundReportForPendingPackageKeepsLock() {
+        scheduler.onAppForeground(APP_A)
+        scheduler.request(APP_A, 1_000L)
+        scheduler.onAppForeground(APP_A)
+
+        assertEquals(APP_A, scheduler.pendingPackage)
+    }
+
+    @Test
+    fun staleRequestIsRefused() {
+        scheduler.onAppForeground(APP_A)
+        // The user moved on before the decision for A arrived
+        scheduler.onAppForeground(APP_B)
+        assertEquals(LockScheduler.Result.REFUSED, scheduler.request(APP_A, 1_000L))
+
+        assertNull(scheduler.pendingPackage)
+        assertEquals(0, time.pending())
+    }
+
+    @Test
+    fun requestAfterLauncherIsRefused() {
+        scheduler.onAppForeground(APP_A)
+        scheduler.onLauncherShown()
+        assertEquals(LockScheduler.Result.REFUSED, scheduler.request(APP_A, 1_000L))
+    }
+
+    @Test
+    fun cancelDropsPendingLock() {
+        scheduler.onAppForeground(APP_A)
+        scheduler.request(APP_A, 1_000L)
+        scheduler.cancel()
+
+        time.advance(TIMEOUT_MS * 2)
+        assertTrue(presented.isEmpty())
+    }
+
+    @Test
+    fun sideWindowLockLeavesForegroundAlone() {
+        scheduler.onAppForeground(APP_A)
+        assertEquals(LockScheduler.Result.SCHEDULED, scheduler.requestSideWindow(APP_B, 1_000L))
+
+        // The focused app keeps reporting; that neither cancels the side window's lock
+        // nor makes a lock for the focused app stale
+        scheduler.onAppForeground(APP_A)
+        assertEquals(APP_B, scheduler.pendingPackage)
+        assertEquals(LockScheduler.Result.SCHEDULED, scheduler.request(APP_A, 1_050L))
+        assertEquals(APP_A, scheduler.pendingPackage)
+    }
+
+    @Test
+    fun sideWindowLockIsRefusedWhileAnotherIsPending() {
+        scheduler.onAppForeground(APP_A)
+        scheduler.request(APP_A, 1_000L)
+
+        assertEquals(LockScheduler.Result.REFUSED, scheduler.requestSideWindow(APP_B, 1_050L))
+        assertEquals(LockScheduler.Result.COLLAPSED, scheduler.requestSideWindow(APP_A, 1_050L))
+
+        time.advance(TIMEOUT_MS)
+        assertEquals(listOf(APP_A to 1_000L), presented)
+    }
+
+    @Test
+    fun sideWindowLockPresentsOnLauncherShown() {
+        scheduler.onAppForeground(APP_A)
+        scheduler.requestSideWindow(APP_B, 1_000L)
+        scheduler.onLauncherShown()
+
+        assertEquals(listOf(APP_B to 1_000L), presented)
+    }
+
+    private companion object {
+        const val TIMEOUT_MS = 500L
+        const val APP_A = "com.example.bank"
+        const val APP_B = "com.example.chat"
+    }
+}
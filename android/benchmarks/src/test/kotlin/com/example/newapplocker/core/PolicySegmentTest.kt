@@ -0,0 +1,94 @@
+package com.example.newapplocker.core
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
+
+class PolicySegmentTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private lateinit var file: File
+    private lateinit var segment: PolicySegment
+
+    @Before
+    fun setUp() {
+        file = File(folder.root, "policy.seg")
+        segment = PolicySegment.open(file)
+    }
+
+    @After
+    fun tearDown() {
+        segment.close()
+    }
+
+    @Test
+    fun emptySegmentHasNoSnapshot() {
+        assertEquals(0L, segment.generation())
+        assertNull(segment.read())
+    }
+
+    @Test
+    fun writeIsReadBackAfterReopen() {
+        val generation = segment.write(LockPolicy(setOf(APP_A, APP_B), emptySet(), true))
+        assertEquals(generation, segment.generation())
+
+        segment.close()
+        segment = PolicySegment.open(file)
+
+        val snapshot = segment.read()
+        assertNotNull(snapshot)
+        assertEquals(generation, snapshot!!.generation)
+        assertEquals(setOf(APP_A, APP_B), snapshot.policy.lockedApps)
+        assertTrue(snapshot.policy.monitoringEnabled)
+    }
+
+    @Test
+    fun readerMapsAFileGrownByAnotherWriter() {
+        val large = (0 until 2_000).map { "com.example.app$it" }.toSet()
+        PolicySegment.open(file).use { writer ->
+            writer.write(LockPolicy(large, emptySet(), false))
+        }
+
+        assertEquals(large, segment.read()!!.policy.lockedApps)
+    }
+
+    @Test
+    fun concurrentReadsNeverSeeATornPayload() {
+        // Each write locks a distinct, internally consistent set; a torn read would mix two
+        val policies = (0 until 8).map { round ->
+            LockPolicy((0 until 200).map { "com.example.round$round.app$it" }.toSet(), emptySet(), round % 2 == 0)
+        }
+        val done = AtomicBoolean(false)
+        val failure = AtomicReference<String?>(null)
+        val reader = Thread {
+            while (!done.get()) {
+                val policy = segment.read()?.policy ?: continue
+                if (policies.none { it.lockedApps == policy.lockedApps && it.monitoringEnabled == policy.monitoringEnabled }) {
+                    failure.set("Torn snapshot of ${policy.lockedApps.size} apps")
+                }
+            }
+        }
+        reader.start()
+        repeat(2_000) { segment.write(policies[it % policies.size]) }
+        done.set(true)
+        reader.join()
+
+        assertNull(failure.get())
+    }
+
+    private companion object {
+        const val APP_A = "com.example.bank"
+        const val APP_B = "com.example.chat"
+    }
+}
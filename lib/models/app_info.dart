@@ -3,10 +3,13 @@ import 'dart:typed_data';
 class AppInfo {
   final String packageName;
   final String appName;
-  final Uint8List? icon;
+  Uint8List? icon;
   final bool isSystemApp;
   bool isLocked;
 
+  /// Case-insensitive sort key, the same order as the native AppNameOrder.
+  late final String sortKey = appName.toLowerCase();
+
   AppInfo({
     required this.packageName,
     required this.appName,
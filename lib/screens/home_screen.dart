@@ -1,5 +1,4 @@
 import 'package:flutter/material.dart';
-import 'dart:typed_data';
 import '../services/app_lock_service.dart';
 import '../services/platform_service.dart';
 import '../models/app_info.dart';
@@ -20,6 +19,9 @@ class _HomeScreenState extends State<HomeScreen>
   List<AppInfo> _systemApps = [];
   List<AppInfo> _userApps = [];
   bool _isLoading = true;
+  // The listing in progress; a second stream on the same EventChannel would
+  // take over the native sink and leave the first one waiting forever
+  Future<void>? _appsLoad;
 
   @override
   void initState() {
@@ -34,87 +36,133 @@ class _HomeScreenState extends State<HomeScreen>
     super.dispose();
   }
 
-  Future<void> _loadApps() async {
+  Future<void> _loadApps() {
+    return _appsLoad ??= _streamApps().whenComplete(() => _appsLoad = null);
+  }
+
+  Future<void> _streamApps() async {
     setState(() {
       _isLoading = true;
     });
 
+    final systemApps = <AppInfo>[];
+    final userApps = <AppInfo>[];
+
     try {
-      final apps = await PlatformService.getInstalledApps();
-      LogService.logger.i('Loaded ${apps.length} apps from platform service');
+      // Apps arrive in chunks; render each one as soon as it lands instead of
+      // waiting for the whole enumeration to finish
+      await for (final chunk in PlatformService.streamInstalledApps()) {
+        final chunkApps = <AppInfo>[];
+        final systemChunk = <AppInfo>[];
+        final userChunk = <AppInfo>[];
+        for (final appMap in chunk) {
+          try {
+            final packageName = appMap['packageName'] as String? ?? 'unknown';
+            final appName = appMap['appName'] as String? ?? 'Unknown App';
+            final isSystemApp = appMap['isSystemApp'] as bool? ?? false;
 
-      final systemApps = <AppInfo>[];
-      final userApps = <AppInfo>[];
+            if (packageName == 'unknown') {
+              LogService.logger.w('Skipping app with unknown package name');
+              continue;
+            }
 
-      for (final appMap in apps) {
-        try {
-          final packageName = appMap['packageName'] as String? ?? 'unknown';
-          final appName = appMap['appName'] as String? ?? 'Unknown App';
-          final isSystemApp = appMap['isSystemApp'] as bool? ?? false;
+            // Icons are fetched per chunk in one batch call below
+            final appInfo = AppInfo(
+              packageName: packageName,
+              appName: appName,
+              isSystemApp: isSystemApp,
+              isLocked: AppLockService.isAppLocked(packageName),
+            );
 
-          if (packageName == 'unknown') {
-            LogService.logger.w('Skipping app with unknown package name');
+            if (isSystemApp) {
+              systemChunk.add(appInfo);
+            } else {
+              userChunk.add(appInfo);
+            }
+            chunkApps.add(appInfo);
+          } catch (e) {
+            LogService.logger.e('Error processing app: $e');
             continue;
           }
+        }
 
-          // Get app icon
-          final iconData = await PlatformService.getAppIcon(packageName);
-          Uint8List? icon;
-          if (iconData != null) {
-            icon = Uint8List.fromList(iconData);
-          }
-
-          final appInfo = AppInfo(
-            packageName: packageName,
-            appName: appName,
-            icon: icon,
-            isSystemApp: isSystemApp,
-            isLocked: await AppLockService.isAppLocked(packageName),
-          );
+        if (!mounted) return;
+        setState(() {
+          _addSorted(systemApps, systemChunk);
+          _addSorted(userApps, userChunk);
+          _systemApps = systemApps;
+          _userApps = userApps;
+          _isLoading = false;
+        });
 
-          if (isSystemApp) {
-            systemApps.add(appInfo);
-          } else {
-            userApps.add(appInfo);
-          }
-        } catch (e) {
-          LogService.logger.e('Error processing app: $e');
-          continue;
-        }
+        // Show the rows now and let their icons fill in when the batch returns
+        _loadIcons(chunkApps);
       }
 
-      // Sort apps alphabetically
-      systemApps.sort((a, b) => a.appName.compareTo(b.appName));
-      userApps.sort((a, b) => a.appName.compareTo(b.appName));
+      LogService.logger.i('Loaded ${systemApps.length + userApps.length} apps from platform service');
 
+      if (!mounted) return;
       setState(() {
-        _systemApps = systemApps;
-        _userApps = userApps;
         _isLoading = false;
       });
     } catch (e) {
+      if (!mounted) return;
       setState(() {
         _isLoading = false;
       });
-      if (mounted) {
-        ScaffoldMessenger.of(context).showSnackBar(
-          SnackBar(content: Text('Error loading apps: $e')),
-        );
+      ScaffoldMessenger.of(context).showSnackBar(
+        SnackBar(content: Text('Error loading apps: $e')),
+      );
+    }
+  }
+
+  static int _byName(AppInfo a, AppInfo b) => a.sortKey.compareTo(b.sortKey);
+
+  // Adds a chunk to a list that is already sorted by name. A warm native index
+  // streams in order, so its chunks are simply appended; chunks from a cold
+  // enumeration are merged in from the back, without re-sorting the list.
+  static void _addSorted(List<AppInfo> sorted, List<AppInfo> chunk) {
+    if (chunk.isEmpty) return;
+    chunk.sort(_byName);
+    var i = sorted.length - 1;
+    sorted.addAll(chunk);
+    if (i < 0 || _byName(sorted[i], chunk.first) <= 0) return;
+
+    var j = chunk.length - 1;
+    var write = sorted.length - 1;
+    while (j >= 0) {
+      if (i >= 0 && _byName(sorted[i], chunk[j]) > 0) {
+        sorted[write--] = sorted[i--];
+      } else {
+        sorted[write--] = chunk[j--];
       }
     }
   }
 
+  Future<void> _loadIcons(List<AppInfo> apps) async {
+    if (apps.isEmpty) return;
+
+    final icons = await PlatformService.getAppIcons(
+      apps.map((app) => app.packageName).toList(),
+    );
+    if (!mounted || icons.isEmpty) return;
+
+    setState(() {
+      for (final app in apps) {
+        app.icon = icons[app.packageName] ?? app.icon;
+      }
+    });
+  }
+
   Future<void> _toggleAppLock(AppInfo app) async {
     try {
+      // The native store switches monitoring on or off when the locked set empties or fills
       if (app.isLocked) {
         await AppLockService.unlockApp(app.packageName);
       } else {
         await AppLockService.lockApp(app.packageName);
       }
 
-      // Update native service with locked apps
-      await _updateNativeLockedApps();
-
       setState(() {
         app.isLocked = !app.isLocked;
       });
@@ -127,16 +175,6 @@ class _HomeScreenState extends State<HomeScreen>
     }
   }
 
-  Future<void> _updateNativeLockedApps() async {
-    try {
-      final lockedApps = await AppLockService.getLockedApps();
-      await PlatformService.setLockedApps(lockedApps);
-      await PlatformService.enableAccessibilityMonitoring(lockedApps.isNotEmpty);
-    } catch (e) {
-      // Handle error silently
-    }
-  }
-
   Future<void> _showDiagnosticDialog() async {
     try {
       // Gather diagnostic information
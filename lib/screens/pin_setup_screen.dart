@@ -1,7 +1,6 @@
 import 'package:flutter/material.dart';
 import 'package:shared_preferences/shared_preferences.dart';
-import 'package:crypto/crypto.dart';
-import 'dart:convert';
+import '../services/platform_service.dart';
 import 'permissions_screen.dart';
 
 class PinSetupScreen extends StatefulWidget {
@@ -40,11 +39,18 @@ class _PinSetupScreenState extends State<PinSetupScreen> {
   Future<void> _savePin() async {
     final prefs = await SharedPreferences.getInstance();
 
-    // Hash the PIN before storing
-    final bytes = utf8.encode(_pin);
-    final hashedPin = sha256.convert(bytes).toString();
-
-    await prefs.setString('app_pin', hashedPin);
+    // The native side hashes the PIN with a salted KDF before storing it
+    final saved = await PlatformService.setPin(_pin);
+    if (!saved) {
+      if (!mounted) return;
+      setState(() {
+        _pin = '';
+      });
+      ScaffoldMessenger.of(context).showSnackBar(
+        const SnackBar(content: Text('Could not save PIN. Try again.')),
+      );
+      return;
+    }
 
     if (!widget.isChangingPin) {
       await prefs.setBool('first_time', false);
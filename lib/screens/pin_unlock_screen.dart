@@ -1,8 +1,5 @@
 import 'package:flutter/material.dart';
 import 'package:flutter/services.dart';
-import 'package:shared_preferences/shared_preferences.dart';
-import 'package:crypto/crypto.dart';
-import 'dart:convert';
 import '../services/platform_service.dart';
 import '../services/log_service.dart';
 
@@ -70,31 +67,23 @@ class _PinUnlockScreenState extends State<PinUnlockScreen> {
   }
 
   Future<void> _verifyPin() async {
-    final prefs = await SharedPreferences.getInstance();
-    final storedPin = prefs.getString('app_pin');
-
-    if (storedPin != null) {
-      final bytes = utf8.encode(_pin);
-      final hashedPin = sha256.convert(bytes).toString();
-
-      if (hashedPin == storedPin) {
-        _unlockApp();
-      } else {
-        setState(() {
-          _pin = '';
-          _isWrongPin = true;
-        });
+    if (await PlatformService.verifyPin(_pin)) {
+      _unlockApp();
+    } else {
+      setState(() {
+        _pin = '';
+        _isWrongPin = true;
+      });
 
-        // Show wrong pin feedback
-        if (mounted) {
-          ScaffoldMessenger.of(context).showSnackBar(
-            const SnackBar(
-              content: Text('Wrong PIN. Try again.'),
-              backgroundColor: Colors.red,
-              duration: Duration(seconds: 2),
-            ),
-          );
-        }
+      // Show wrong pin feedback
+      if (mounted) {
+        ScaffoldMessenger.of(context).showSnackBar(
+          const SnackBar(
+            content: Text('Wrong PIN. Try again.'),
+            backgroundColor: Colors.red,
+            duration: Duration(seconds: 2),
+          ),
+        );
       }
     }
   }
@@ -16,12 +16,26 @@ class _SettingsScreenState extends State<SettingsScreen> {
   bool _hasUsageStats = false;
   bool _hasOverlay = false;
   bool _hasAccessibility = false;
+  Map<String, Map<String, dynamic>> _latencyStats = {};
+  Map<String, dynamic>? _eventStats;
+  bool _multiWindowDetection = false;
+  bool _usageStatsEngine = false;
+  Map<String, dynamic>? _usageEngineStats;
+
+  static const _latencyStages = {
+    'decision': 'Lock decision',
+    'homeAction': 'HOME action',
+    'screenCreated': 'PIN screen created',
+    'firstFrame': 'PIN screen first frame',
+  };
 
   @override
   void initState() {
     super.initState();
     _loadDeviceInfo();
     _checkPermissions();
+    _loadLatencyStats();
+    _loadDetectionSettings();
   }
 
 
@@ -48,6 +62,126 @@ class _SettingsScreenState extends State<SettingsScreen> {
     }
   }
 
+  Future<void> _loadLatencyStats() async {
+    final stats = await PlatformService.getLockLatencyStats();
+    final eventStats = await PlatformService.getAccessibilityEventStats();
+    final usageEngineStats = await PlatformService.getUsageStatsEngineStats();
+    if (!mounted) return;
+    setState(() {
+      _latencyStats = stats;
+      _eventStats = eventStats;
+      _usageEngineStats = usageEngineStats;
+    });
+  }
+
+  Future<void> _loadDetectionSettings() async {
+    final enabled = await PlatformService.isMultiWindowDetectionEnabled();
+    final engine = await PlatformService.getForegroundEngine();
+    final engineError = await PlatformService.getForegroundEngineError();
+    if (!mounted) return;
+    setState(() {
+      _multiWindowDetection = enabled;
+      _usageStatsEngine = engine == 'usage_stats';
+    });
+    if (engineError != null && engine != 'usage_stats') {
+      ScaffoldMessenger.of(context).showSnackBar(
+        SnackBar(
+          content: Text('Usage access engine stopped: $engineError'),
+        ),
+      );
+    }
+  }
+
+  Future<void> _setUsageStatsEngine(bool enabled) async {
+    if (enabled && !await PermissionService.hasUsageStatsPermission()) {
+      await PermissionService.requestUsageStatsPermission();
+      if (!mounted) return;
+      ScaffoldMessenger.of(context).showSnackBar(
+        const SnackBar(
+          content: Text('Grant usage access, then turn this on again'),
+        ),
+      );
+      return;
+    }
+    final ok = await PlatformService.setForegroundEngine(
+      enabled ? 'usage_stats' : 'accessibility',
+    );
+    if (!mounted || !ok) return;
+    setState(() {
+      _usageStatsEngine = enabled;
+    });
+    if (enabled) {
+      // The service starts asynchronously; give it time to enter the
+      // foreground, then pick up a fallback to accessibility if it could not
+      await Future<void>.delayed(const Duration(seconds: 1));
+      if (!mounted) return;
+      await _loadDetectionSettings();
+    }
+    await _loadLatencyStats();
+  }
+
+  Future<void> _setMultiWindowDetection(bool enabled) async {
+    final ok = await PlatformService.setMultiWindowDetection(enabled);
+    if (!mounted || !ok) return;
+    setState(() {
+      _multiWindowDetection = enabled;
+    });
+  }
+
+  String _eventRateText() {
+    final usageStats = _usageEngineStats;
+    if (_usageStatsEngine && usageStats != null) {
+      final polls = (usageStats['polls'] as num?)?.toInt() ?? 0;
+      final cpuPerMinute =
+          ((usageStats['cpuMsPerMinute'] as num?) ?? 0).toStringAsFixed(1);
+      return 'Usage access polling: $polls polls, $cpuPerMinute ms CPU/min';
+    }
+    final stats = _eventStats;
+    if (stats == null) return 'Accessibility service not running';
+    final perMinute = ((stats['eventsPerMinute'] as num?) ?? 0).toStringAsFixed(1);
+    final accepted = (stats['acceptedEvents'] as num?)?.toInt() ?? 0;
+    return 'Accessibility events: $perMinute/min ($accepted acted on)';
+  }
+
+  Future<void> _resetLatencyStats() async {
+    await PlatformService.resetLockLatencyStats();
+    await _loadLatencyStats();
+  }
+
+  Widget _buildLatencyRow(String stage, String label) {
+    final stats = _latencyStats[stage];
+    final count = (stats?['count'] as num?)?.toInt() ?? 0;
+    String ms(String key) => ((stats?[key] as num?) ?? 0).toStringAsFixed(1);
+
+    return Padding(
+      padding: const EdgeInsets.symmetric(vertical: 6),
+      child: Column(
+        crossAxisAlignment: CrossAxisAlignment.start,
+        children: [
+          Text(
+            label,
+            style: const TextStyle(
+              color: Colors.white,
+              fontSize: 14,
+              fontWeight: FontWeight.w500,
+            ),
+          ),
+          const SizedBox(height: 2),
+          Text(
+            count == 0
+                ? 'No samples yet'
+                : 'p50 ${ms('p50Ms')} ms · p90 ${ms('p90Ms')} ms · '
+                    'p99 ${ms('p99Ms')} ms · max ${ms('maxMs')} ms ($count)',
+            style: const TextStyle(
+              color: Colors.white70,
+              fontSize: 12,
+            ),
+          ),
+        ],
+      ),
+    );
+  }
+
   Future<void> _checkPermissions() async {
     try {
       final usageStats = await PermissionService.hasUsageStatsPermission();
@@ -240,6 +374,78 @@ class _SettingsScreenState extends State<SettingsScreen> {
                   ),
                   onTap: _changePIN,
                 ),
+                const SizedBox(height: 8),
+                ListTile(
+                  contentPadding: EdgeInsets.zero,
+                  leading: Container(
+                    padding: const EdgeInsets.all(8),
+                    decoration: BoxDecoration(
+                      color: const Color(0xFF4DB6AC),
+                      borderRadius: BorderRadius.circular(8),
+                    ),
+                    child: const Icon(
+                      Icons.splitscreen,
+                      color: Colors.white,
+                      size: 20,
+                    ),
+                  ),
+                  title: const Text(
+                    'Split-screen detection',
+                    style: TextStyle(
+                      color: Colors.white,
+                      fontSize: 16,
+                      fontWeight: FontWeight.w500,
+                    ),
+                  ),
+                  subtitle: const Text(
+                    'Also lock apps shown beside another app. Uses more battery',
+                    style: TextStyle(
+                      color: Colors.white70,
+                      fontSize: 14,
+                    ),
+                  ),
+                  trailing: Switch(
+                    value: _multiWindowDetection,
+                    activeColor: const Color(0xFF4DB6AC),
+                    onChanged: _setMultiWindowDetection,
+                  ),
+                ),
+                const SizedBox(height: 8),
+                ListTile(
+                  contentPadding: EdgeInsets.zero,
+                  leading: Container(
+                    padding: const EdgeInsets.all(8),
+                    decoration: BoxDecoration(
+                      color: const Color(0xFF4DB6AC),
+                      borderRadius: BorderRadius.circular(8),
+                    ),
+                    child: const Icon(
+                      Icons.query_stats,
+                      color: Colors.white,
+                      size: 20,
+                    ),
+                  ),
+                  title: const Text(
+                    'Detect apps via usage access',
+                    style: TextStyle(
+                      color: Colors.white,
+                      fontSize: 16,
+                      fontWeight: FontWeight.w500,
+                    ),
+                  ),
+                  subtitle: const Text(
+                    'For phones that keep stopping the accessibility service',
+                    style: TextStyle(
+                      color: Colors.white70,
+                      fontSize: 14,
+                    ),
+                  ),
+                  trailing: Switch(
+                    value: _usageStatsEngine,
+                    activeColor: const Color(0xFF4DB6AC),
+                    onChanged: _setUsageStatsEngine,
+                  ),
+                ),
               ],
             ),
           ),
@@ -386,6 +592,63 @@ class _SettingsScreenState extends State<SettingsScreen> {
 
           const SizedBox(height: 16),
 
+          // Lock Latency Section
+          Container(
+            margin: const EdgeInsets.symmetric(horizontal: 16),
+            padding: const EdgeInsets.all(16),
+            decoration: BoxDecoration(
+              color: const Color(0xFF1E1E1E),
+              borderRadius: BorderRadius.circular(12),
+            ),
+            child: Column(
+              crossAxisAlignment: CrossAxisAlignment.start,
+              children: [
+                Row(
+                  children: [
+                    const Expanded(
+                      child: Text(
+                        'Lock Latency',
+                        style: TextStyle(
+                          color: Color(0xFF4DB6AC),
+                          fontSize: 16,
+                          fontWeight: FontWeight.bold,
+                        ),
+                      ),
+                    ),
+                    IconButton(
+                      onPressed: _loadLatencyStats,
+                      icon: const Icon(Icons.refresh, color: Colors.white54, size: 20),
+                    ),
+                    IconButton(
+                      onPressed: _resetLatencyStats,
+                      icon: const Icon(Icons.delete_outline, color: Colors.white54, size: 20),
+                    ),
+                  ],
+                ),
+                const Text(
+                  'Time from a locked app opening to each step',
+                  style: TextStyle(
+                    color: Colors.white54,
+                    fontSize: 12,
+                  ),
+                ),
+                const SizedBox(height: 8),
+                for (final entry in _latencyStages.entries)
+                  _buildLatencyRow(entry.key, entry.value),
+                const SizedBox(height: 4),
+                Text(
+                  _eventRateText(),
+                  style: const TextStyle(
+                    color: Colors.white54,
+                    fontSize: 12,
+                  ),
+                ),
+              ],
+            ),
+          ),
+
+          const SizedBox(height: 16),
+
           // About Section
           Container(
             margin: const EdgeInsets.symmetric(horizontal: 16),
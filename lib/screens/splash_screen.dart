@@ -1,5 +1,6 @@
 import 'package:flutter/material.dart';
 import 'package:shared_preferences/shared_preferences.dart';
+import '../services/platform_service.dart';
 import 'welcome_screen.dart';
 import 'home_screen.dart';
 
@@ -22,11 +23,11 @@ class _SplashScreenState extends State<SplashScreen> {
 
     final prefs = await SharedPreferences.getInstance();
     final bool isFirstTime = prefs.getBool('first_time') ?? true;
-    final String? pin = prefs.getString('app_pin');
+    final bool hasPin = await PlatformService.hasPin();
 
     if (!mounted) return;
 
-    if (isFirstTime || pin == null) {
+    if (isFirstTime || !hasPin) {
       Navigator.pushReplacement(
         context,
         MaterialPageRoute(builder: (context) => const WelcomeScreen()),
@@ -1,73 +1,91 @@
 import 'package:shared_preferences/shared_preferences.dart';
 import 'package:sqflite/sqflite.dart';
 import 'package:path/path.dart';
+import 'platform_service.dart';
 
 class AppLockService {
-  static late Database _database;
   static late SharedPreferences _prefs;
 
+  // Mirror of the native lock store, which owns the locked apps. Changes are
+  // sent one package at a time and [_version] tracks the native version so
+  // refresh() only transfers the list when something changed.
+  static final Set<String> _lockedApps = <String>{};
+  static int _version = -1;
+
   static Future<void> init() async {
     _prefs = await SharedPreferences.getInstance();
-    await _initDatabase();
+    await _migrateDatabase();
+    await refresh();
+  }
+
+  /// Reloads the locked apps if the native store changed since the last load.
+  static Future<void> refresh() async {
+    final snapshot = await PlatformService.getLockSnapshot(sinceVersion: _version);
+    if (snapshot == null) return;
+
+    final lockedApps = snapshot['lockedApps'] as List?;
+    if (lockedApps != null) {
+      _lockedApps
+        ..clear()
+        ..addAll(lockedApps.cast<String>());
+    }
+    _version = (snapshot['version'] as num).toInt();
   }
 
-  static Future<void> _initDatabase() async {
-    final dbPath = await getDatabasesPath();
-    final path = join(dbPath, 'app_locker.db');
-
-    _database = await openDatabase(
-      path,
-      version: 1,
-      onCreate: (db, version) async {
-        await db.execute('''
-          CREATE TABLE locked_apps(
-            id INTEGER PRIMARY KEY AUTOINCREMENT,
-            package_name TEXT UNIQUE,
-            app_name TEXT,
-            is_system_app INTEGER,
-            locked_at INTEGER
-          )
-        ''');
-      },
-    );
+  // Earlier versions kept locked apps in a SQLite table as well as natively.
+  // Merge any rows into the native store once and drop the database.
+  static Future<void> _migrateDatabase() async {
+    final path = join(await getDatabasesPath(), 'app_locker.db');
+    if (!await databaseExists(path)) return;
+
+    final database = await openDatabase(path, readOnly: true);
+    final rows = await database.query('locked_apps', columns: ['package_name']);
+    await database.close();
+
+    if (rows.isNotEmpty) {
+      final snapshot = await PlatformService.getLockSnapshot();
+      if (snapshot == null) return; // Keep the table and try again next start
+
+      final merged = <String>{
+        ...((snapshot['lockedApps'] as List?) ?? const []).cast<String>(),
+        ...rows.map((row) => row['package_name'] as String),
+      };
+      if (!await PlatformService.setLockedApps(merged.toList())) return;
+    }
+    await deleteDatabase(path);
   }
 
-  static Future<bool> isAppLocked(String packageName) async {
-    final result = await _database.query(
-      'locked_apps',
-      where: 'package_name = ?',
-      whereArgs: [packageName],
-    );
-    return result.isNotEmpty;
+  static bool isAppLocked(String packageName) {
+    return _lockedApps.contains(packageName);
   }
 
   static Future<void> lockApp(String packageName) async {
-    final now = DateTime.now().millisecondsSinceEpoch;
-    await _database.insert(
-      'locked_apps',
-      {
-        'package_name': packageName,
-        'locked_at': now,
-      },
-      conflictAlgorithm: ConflictAlgorithm.replace,
-    );
+    final version = await PlatformService.lockApp(packageName);
+    if (version == null) {
+      throw StateError('Failed to lock $packageName');
+    }
+    _lockedApps.add(packageName);
+    _version = version;
   }
 
   static Future<void> unlockApp(String packageName) async {
-    await _database.delete(
-      'locked_apps',
-      where: 'package_name = ?',
-      whereArgs: [packageName],
-    );
+    final version = await PlatformService.unlockApp(packageName);
+    if (version == null) {
+      throw StateError('Failed to unlock $packageName');
+    }
+    _lockedApps.remove(packageName);
+    _version = version;
   }
 
   static Future<List<String>> getLockedApps() async {
-    final result = await _database.query('locked_apps');
-    return result.map((row) => row['package_name'] as String).toList();
+    return _lockedApps.toList();
   }
 
   static Future<void> unlockAllApps() async {
-    await _database.delete('locked_apps');
+    await PlatformService.setLockedApps(const []);
+    _lockedApps.clear();
+    // The version moved; let the next refresh pick it up
+    _version = -1;
   }
 
   // Background service methods
@@ -83,19 +101,6 @@ class AppLockService {
     return _prefs.getBool('lock_service_enabled') ?? false;
   }
 
-  // PIN verification
-  static String? getStoredPin() {
-    return _prefs.getString('app_pin');
-  }
-
-  static Future<void> setPin(String hashedPin) async {
-    await _prefs.setString('app_pin', hashedPin);
-  }
-
-  static Future<void> removePin() async {
-    await _prefs.remove('app_pin');
-  }
-
   // Settings
   static bool isAutoLockEnabled() {
     return _prefs.getBool('auto_lock_enabled') ?? false;
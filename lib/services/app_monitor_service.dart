@@ -84,33 +84,16 @@ class AppMonitorService {
 
       debugPrint('AppMonitorService: App switch detected - $packageName ($eventType)');
 
-      // Only handle locked apps (not QVault itself)
+      // The native side already covers locked apps with the PIN screen before
+      // this event arrives; nothing to do here but note it
       if (_lockedApps.contains(packageName)) {
         debugPrint('AppMonitorService: Locked app detected: $packageName');
-        // Show unlock screen immediately when locked app is accessed
-        _handleLockedAppAccess(packageName);
       }
     } catch (e) {
       debugPrint('AppMonitorService: Error handling app switch: $e');
     }
   }
 
-  /// Handle access to a locked app
-  static void _handleLockedAppAccess(String packageName) {
-    try {
-      debugPrint('AppMonitorService: Blocking access to $packageName');
-
-      // Show unlock screen
-      PlatformService.showUnlockScreen(packageName);
-
-      // Optionally, kill the app (requires device admin)
-      // PlatformService.killApp(packageName);
-
-    } catch (e) {
-      debugPrint('AppMonitorService: Error blocking app access: $e');
-    }
-  }
-
   /// Load locked apps from storage
   static Future<void> _loadLockedApps() async {
     try {
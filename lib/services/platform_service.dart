@@ -1,10 +1,12 @@
 import 'dart:async';
+import 'dart:typed_data';
 import 'package:flutter/services.dart';
 import 'log_service.dart';
 
 class PlatformService {
   static const MethodChannel _channel = MethodChannel('app_locker_channel');
   static const EventChannel _eventChannel = EventChannel('app_locker_events');
+  static const EventChannel _installedAppsChannel = EventChannel('app_locker_installed_apps');
 
   static Stream<Map<String, dynamic>>? _appSwitchStream;
 
@@ -56,47 +58,88 @@ class PlatformService {
   }
 
   // Set locked apps in native service
-  static Future<void> setLockedApps(List<String> packageNames) async {
+  static Future<bool> setLockedApps(List<String> packageNames) async {
     try {
       LogService.logger.i('Setting locked apps on native side: $packageNames');
-      await _channel.invokeMethod('setLockedApps', {
+      final ok = await _channel.invokeMethod<bool>('setLockedApps', {
         'packageNames': packageNames,
       });
-      LogService.logger.i('Successfully set locked apps on native side');
+      LogService.logger.i('Set locked apps on native side: ${ok == true}');
+      return ok == true;
     } catch (e) {
       LogService.logger.e('Error setting locked apps: $e');
+      return false;
     }
   }
 
-  // Enable accessibility monitoring
-  static Future<void> enableAccessibilityMonitoring(bool enabled) async {
+  // Lock a single app in the native lock store; returns the new version
+  static Future<int?> lockApp(String packageName) async {
     try {
-      LogService.logger.i('Setting accessibility monitoring to: $enabled');
-      await _channel.invokeMethod('enableAccessibilityMonitoring', {
-        'enabled': enabled,
+      return await _channel.invokeMethod<int>('lockApp', {
+        'packageName': packageName,
       });
-      LogService.logger.i('Successfully set accessibility monitoring to: $enabled');
     } catch (e) {
-      LogService.logger.e('Error enabling accessibility monitoring: $e');
+      LogService.logger.e('Error locking app $packageName: $e');
+      return null;
     }
   }
 
-  // Show unlock screen overlay
-  static Future<void> showUnlockScreen(String packageName) async {
+  // Unlock a single app in the native lock store; returns the new version
+  static Future<int?> unlockApp(String packageName) async {
     try {
-      await _channel.invokeMethod('showUnlockScreen', {
+      return await _channel.invokeMethod<int>('unlockApp', {
         'packageName': packageName,
       });
     } catch (e) {
-      LogService.logger.e('Error showing unlock screen: $e');
+      LogService.logger.e('Error unlocking app $packageName: $e');
+      return null;
+    }
+  }
+
+  // Get the locked apps from the native lock store. When [sinceVersion] is
+  // still current the result carries only 'version' and no 'lockedApps'.
+  static Future<Map<String, dynamic>?> getLockSnapshot({int sinceVersion = -1}) async {
+    try {
+      final result = await _channel.invokeMethod<Map>('getLockSnapshot', {
+        'sinceVersion': sinceVersion,
+      });
+      return result?.cast<String, dynamic>();
+    } catch (e) {
+      LogService.logger.e('Error getting lock snapshot: $e');
+      return null;
+    }
+  }
+
+  // Enable accessibility monitoring
+  static Future<void> enableAccessibilityMonitoring(bool enabled) async {
+    try {
+      LogService.logger.i('Setting accessibility monitoring to: $enabled');
+      await _channel.invokeMethod('enableAccessibilityMonitoring', {
+        'enabled': enabled,
+      });
+      LogService.logger.i('Successfully set accessibility monitoring to: $enabled');
+    } catch (e) {
+      LogService.logger.e('Error enabling accessibility monitoring: $e');
     }
   }
 
   // Get app switch events stream
+  // App switches arrive from native in batches ('app_switch_batch'); each one is
+  // re-emitted here as its own 'app_switched' event.
   static Stream<Map<String, dynamic>> getAppSwitchEvents() {
     _appSwitchStream ??= _eventChannel
         .receiveBroadcastStream()
-        .map((event) => Map<String, dynamic>.from(event));
+        .expand<Map<String, dynamic>>((event) {
+          final map = Map<String, dynamic>.from(event);
+          if (map['type'] != 'app_switch_batch') {
+            return [map];
+          }
+          final events = map['events'] as List<dynamic>? ?? const [];
+          return events.map((item) => <String, dynamic>{
+                'type': 'app_switched',
+                ...Map<String, dynamic>.from(item as Map),
+              });
+        });
     return _appSwitchStream!;
   }
 
@@ -173,19 +216,71 @@ class PlatformService {
     }
   }
 
-  // Get app icon
-  static Future<List<int>?> getAppIcon(String packageName) async {
+  // Stream installed apps in chunks as the native side resolves them. The stream
+  // closes once the listing is complete.
+  static Stream<List<Map<String, dynamic>>> streamInstalledApps() {
+    return _installedAppsChannel
+        .receiveBroadcastStream()
+        .map((event) => Map<String, dynamic>.from(event as Map))
+        .takeWhile((event) => event['type'] != 'apps_done')
+        .where((event) => event['type'] == 'apps_chunk')
+        .map((event) {
+          final apps = event['apps'] as List<dynamic>? ?? const [];
+          return apps
+              .whereType<Map>()
+              .map((item) => Map<String, dynamic>.from(item))
+              .toList();
+        });
+  }
+
+  // Get a single app's details from the native index (null if not installed)
+  static Future<Map<String, dynamic>?> getAppInfo(String packageName) async {
+    try {
+      final result = await _channel.invokeMethod('getAppInfo', {
+        'packageName': packageName,
+      });
+      return result is Map ? Map<String, dynamic>.from(result) : null;
+    } catch (e) {
+      LogService.logger.e('Error getting app info: $e');
+      return null;
+    }
+  }
+
+  // Get app icon (pre-encoded bytes from the native icon cache)
+  static Future<Uint8List?> getAppIcon(String packageName) async {
     try {
       final result = await _channel.invokeMethod('getAppIcon', {
         'packageName': packageName,
       });
-      return result != null ? List<int>.from(result) : null;
+      return result is Uint8List ? result : null;
     } catch (e) {
       LogService.logger.e('Error getting app icon: $e');
       return null;
     }
   }
 
+  // Get icons for many apps in one round trip; the native side decodes them in
+  // parallel. Apps without an icon are missing from the returned map.
+  static Future<Map<String, Uint8List>> getAppIcons(
+    List<String> packageNames, {
+    int sizePx = 96,
+  }) async {
+    try {
+      final result = await _channel.invokeMethod('getAppIcons', {
+        'packageNames': packageNames,
+        'sizePx': sizePx,
+      });
+      if (result is! Map) return {};
+      return {
+        for (final entry in result.entries)
+          if (entry.value is Uint8List) entry.key as String: entry.value as Uint8List,
+      };
+    } catch (e) {
+      LogService.logger.e('Error getting app icons: $e');
+      return {};
+    }
+  }
+
   // Request auto-start permission for device-specific manufacturers
   static Future<bool> requestAutoStart() async {
     try {
@@ -230,6 +325,108 @@ class PlatformService {
     }
   }
 
+  // Lock latency percentiles per stage, keyed by stage name. Each entry holds
+  // 'count' and 'p50Ms'/'p90Ms'/'p99Ms'/'maxMs' measured from the window event.
+  static Future<Map<String, Map<String, dynamic>>> getLockLatencyStats() async {
+    try {
+      final result = await _channel.invokeMethod<Map>('getLockLatencyStats');
+      if (result == null) return {};
+      return result.map((stage, stats) => MapEntry(
+            stage as String,
+            (stats as Map).cast<String, dynamic>(),
+          ));
+    } catch (e) {
+      LogService.logger.e('Error getting lock latency stats: $e');
+      return {};
+    }
+  }
+
+  // Accessibility event counts since the service last (re)subscribed, or null
+  // when the service is not running
+  static Future<Map<String, dynamic>?> getAccessibilityEventStats() async {
+    try {
+      final result = await _channel.invokeMethod<Map>('getAccessibilityEventStats');
+      return result?.cast<String, dynamic>();
+    } catch (e) {
+      LogService.logger.e('Error getting accessibility event stats: $e');
+      return null;
+    }
+  }
+
+  static Future<bool> isMultiWindowDetectionEnabled() async {
+    try {
+      return await _channel.invokeMethod<bool>('isMultiWindowDetectionEnabled') ?? false;
+    } catch (e) {
+      LogService.logger.e('Error reading multi-window detection: $e');
+      return false;
+    }
+  }
+
+  static Future<bool> setMultiWindowDetection(bool enabled) async {
+    try {
+      return await _channel.invokeMethod<bool>('setMultiWindowDetection', {
+            'enabled': enabled,
+          }) ??
+          false;
+    } catch (e) {
+      LogService.logger.e('Error setting multi-window detection: $e');
+      return false;
+    }
+  }
+
+  /// 'accessibility' or 'usage_stats'.
+  static Future<String> getForegroundEngine() async {
+    try {
+      return await _channel.invokeMethod<String>('getForegroundEngine') ??
+          'accessibility';
+    } catch (e) {
+      LogService.logger.e('Error reading foreground engine: $e');
+      return 'accessibility';
+    }
+  }
+
+  /// Returns false if the engine was refused, e.g. usage access is missing.
+  static Future<bool> setForegroundEngine(String engine) async {
+    try {
+      return await _channel.invokeMethod<bool>('setForegroundEngine', {
+            'engine': engine,
+          }) ??
+          false;
+    } catch (e) {
+      LogService.logger.e('Error setting foreground engine: $e');
+      return false;
+    }
+  }
+
+  /// Why the usage stats engine last failed to start, or null. The native
+  /// side falls back to 'accessibility' when that happens.
+  static Future<String?> getForegroundEngineError() async {
+    try {
+      return await _channel.invokeMethod<String>('getForegroundEngineError');
+    } catch (e) {
+      LogService.logger.e('Error reading foreground engine error: $e');
+      return null;
+    }
+  }
+
+  static Future<Map<String, dynamic>?> getUsageStatsEngineStats() async {
+    try {
+      final result = await _channel.invokeMethod<Map>('getUsageStatsEngineStats');
+      return result?.cast<String, dynamic>();
+    } catch (e) {
+      LogService.logger.e('Error getting usage stats engine stats: $e');
+      return null;
+    }
+  }
+
+  static Future<void> resetLockLatencyStats() async {
+    try {
+      await _channel.invokeMethod('resetLockLatencyStats');
+    } catch (e) {
+      LogService.logger.e('Error resetting lock latency stats: $e');
+    }
+  }
+
   static Future<Map<dynamic, dynamic>> getIntentData() async {
     try {
       final result = await _channel.invokeMethod('getIntentData');
@@ -278,4 +475,41 @@ class PlatformService {
       LogService.logger.e('Error launching app: $e');
     }
   }
+
+  // True if a PIN record exists on the native side
+  static Future<bool> hasPin() async {
+    try {
+      final result = await _channel.invokeMethod('hasPin');
+      return result ?? false;
+    } catch (e) {
+      LogService.logger.e('Error checking PIN: $e');
+      return false;
+    }
+  }
+
+  // Store a new PIN; the native side salts and stretches it before saving
+  static Future<bool> setPin(String pin) async {
+    try {
+      final result = await _channel.invokeMethod('setPin', {
+        'pin': pin,
+      });
+      return result ?? false;
+    } catch (e) {
+      LogService.logger.e('Error setting PIN: $e');
+      return false;
+    }
+  }
+
+  // Check a PIN against the stored record (migrates legacy records on success)
+  static Future<bool> verifyPin(String pin) async {
+    try {
+      final result = await _channel.invokeMethod('verifyPin', {
+        'pin': pin,
+      });
+      return result ?? false;
+    } catch (e) {
+      LogService.logger.e('Error verifying PIN: $e');
+      return false;
+    }
+  }
 }
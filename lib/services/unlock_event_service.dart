@@ -28,7 +28,7 @@ class UnlockEventService {
           if (eventType == 'unlock_request' && packageName != null) {
             LogService.logger.i('🔐 STEP 16: Valid unlock request, showing PIN screen for $packageName');
             _showUnlockScreen(packageName);
-          } else {
+          } else if (eventType != 'app_switch_batch') {
             LogService.logger.w('🔐 STEP 16: Invalid event - ignoring');
           }
         } else {
@@ -52,14 +52,9 @@ class UnlockEventService {
 
     try {
       LogService.logger.i('🔐 STEP 18: Getting app info for display');
-      // Get app name for display
-      final apps = await PlatformService.getInstalledApps();
-      final app = apps.firstWhere(
-        (app) => app['packageName'] == packageName,
-        orElse: () => {'appName': 'Unknown App'},
-      );
-
-      final appName = app['appName'] as String;
+      // Get app name for display (single lookup in the native app index)
+      final app = await PlatformService.getAppInfo(packageName);
+      final appName = app?['appName'] as String? ?? 'Unknown App';
       LogService.logger.i('🔐 STEP 19: App name resolved: $appName');
 
       // Show unlock screen